@@ -0,0 +1,118 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat Middleware LLC, and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.arquillian.container.was.embedded_8;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import org.jboss.shrinkwrap.api.Archive;
+import org.jboss.shrinkwrap.api.Node;
+import org.jboss.shrinkwrap.api.asset.ArchiveAsset;
+import org.jboss.shrinkwrap.api.asset.Asset;
+
+/**
+ * Digest over the paths and contents of a ShrinkWrap archive.
+ *
+ * The digest is computed from the archive content rather than from an exported zip
+ * file, whose entries carry timestamps, so that two archives with the same content
+ * always have the same digest. Nested archives are digested recursively.
+ *
+ * @version $Revision: $
+ */
+public class ArchiveDigest
+{
+   private static final String DIGEST_ALGORITHM = "SHA-256";
+
+   private ArchiveDigest()
+   {
+   }
+
+   /**
+    * @return the hex encoded digest of the archive
+    */
+   public static String of(Archive<?> archive) throws IOException
+   {
+      SortedMap<String, String> entries = new TreeMap<String, String>();
+      for (Map.Entry<?, Node> content : archive.getContent().entrySet())
+      {
+         Node node = content.getValue();
+         Asset asset = node.getAsset();
+         if (asset != null)
+            entries.put(node.getPath().get(), digestOf(asset));
+      }
+
+      MessageDigest digest = newDigest();
+      for (Map.Entry<String, String> entry : entries.entrySet())
+      {
+         digest.update(entry.getKey().getBytes("UTF-8"));
+         digest.update((byte) 0);
+         digest.update(entry.getValue().getBytes("UTF-8"));
+         digest.update((byte) 0);
+      }
+      return toHex(digest.digest());
+   }
+
+   private static String digestOf(Asset asset) throws IOException
+   {
+      if (asset instanceof ArchiveAsset)
+         return of(((ArchiveAsset) asset).getArchive());
+
+      MessageDigest digest = newDigest();
+      InputStream in = asset.openStream();
+      try
+      {
+         byte[] buffer = new byte[8192];
+         int read;
+         while ((read = in.read(buffer)) != -1)
+         {
+            digest.update(buffer, 0, read);
+         }
+      }
+      finally
+      {
+         in.close();
+      }
+      return toHex(digest.digest());
+   }
+
+   private static MessageDigest newDigest()
+   {
+      try
+      {
+         return MessageDigest.getInstance(DIGEST_ALGORITHM);
+      }
+      catch (NoSuchAlgorithmException e)
+      {
+         throw new IllegalStateException(DIGEST_ALGORITHM + " is not supported by this JVM", e);
+      }
+   }
+
+   private static String toHex(byte[] bytes)
+   {
+      StringBuilder hex = new StringBuilder(bytes.length * 2);
+      for (byte b : bytes)
+      {
+         hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+      }
+      return hex.toString();
+   }
+}
@@ -0,0 +1,100 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat Middleware LLC, and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.arquillian.container.was.embedded_8;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import javax.ejb.Singleton;
+import javax.ejb.Stateless;
+
+import org.jboss.shrinkwrap.api.Archive;
+import org.jboss.shrinkwrap.api.Node;
+import org.jboss.shrinkwrap.api.asset.ArchiveAsset;
+import org.jboss.shrinkwrap.api.asset.Asset;
+import org.jboss.shrinkwrap.api.asset.ClassAsset;
+
+/**
+ * Stateless and singleton session beans of a ShrinkWrap archive, whose references can be
+ * cached by a {@link CachingContext}.
+ *
+ * Beans are identified as module name and bean name, as they appear at the end of their
+ * java:global names. Only beans declared with annotations on classes added to the archive
+ * are found; beans declared in deployment descriptors are not.
+ *
+ * @version $Revision: $
+ */
+public class CacheableBeans
+{
+   private CacheableBeans()
+   {
+   }
+
+   /**
+    * @return the stateless and singleton beans of the archive, as "module/bean" names
+    */
+   public static Set<String> of(Archive<?> archive)
+   {
+      Set<String> beans = new HashSet<String>();
+      if (archive.getName().endsWith(".ear"))
+      {
+         // The modules of an enterprise archive are at its root
+         for (Node node : archive.get("/").getChildren())
+         {
+            if (node.getAsset() instanceof ArchiveAsset)
+            {
+               Archive<?> module = ((ArchiveAsset) node.getAsset()).getArchive();
+               collect(module, moduleName(module), beans);
+            }
+         }
+      }
+      else
+      {
+         collect(archive, moduleName(archive), beans);
+      }
+      return beans;
+   }
+
+   private static void collect(Archive<?> archive, String module, Set<String> beans)
+   {
+      for (Node node : archive.getContent().values())
+      {
+         Asset asset = node.getAsset();
+         if (asset instanceof ArchiveAsset)
+         {
+            // Libraries of a web module belong to that module
+            collect(((ArchiveAsset) asset).getArchive(), module, beans);
+         }
+         else if (asset instanceof ClassAsset)
+         {
+            Class<?> beanClass = ((ClassAsset) asset).getSource();
+            Stateless stateless = beanClass.getAnnotation(Stateless.class);
+            Singleton singleton = beanClass.getAnnotation(Singleton.class);
+            String name = stateless != null ? stateless.name() : (singleton != null ? singleton.name() : null);
+            if (name != null)
+               beans.add(module + "/" + (name.length() > 0 ? name : beanClass.getSimpleName()));
+         }
+      }
+   }
+
+   private static String moduleName(Archive<?> archive)
+   {
+      String name = archive.getName();
+      int extension = name.lastIndexOf('.');
+      return extension > 0 ? name.substring(0, extension) : name;
+   }
+}
@@ -0,0 +1,128 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat Middleware LLC, and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.arquillian.container.was.embedded_8;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.naming.Context;
+import javax.naming.Name;
+import javax.naming.NamingException;
+
+/**
+ * JNDI context that caches the java:global references of stateless and singleton session
+ * beans looked up through it, see {@link CacheableBeans}. All other operations, and lookups
+ * of any other name, go to the underlying context.
+ *
+ * References to such beans may be shared by any number of callers, so they stay valid for
+ * as long as the deployed modules do not change; the cache has to be invalidated whenever
+ * they do.
+ *
+ * @version $Revision: $
+ */
+public class CachingContext extends DelegatingContext
+{
+   private static final String GLOBAL_PREFIX = "java:global/";
+
+   private Context delegate;
+
+   private volatile Set<String> cacheableBeans = Collections.emptySet();
+
+   private Map<String, Object> references = new ConcurrentHashMap<String, Object>();
+
+   private AtomicLong hits = new AtomicLong();
+   private AtomicLong misses = new AtomicLong();
+
+   public CachingContext(Context delegate)
+   {
+      this.delegate = delegate;
+   }
+
+   @Override
+   protected Context getDelegate()
+   {
+      return delegate;
+   }
+
+   @Override
+   public Object lookup(Name name) throws NamingException
+   {
+      return lookup(name.toString());
+   }
+
+   @Override
+   public Object lookup(String name) throws NamingException
+   {
+      if (!isCacheable(name))
+         return delegate.lookup(name);
+
+      Object reference = references.get(name);
+      if (reference != null)
+      {
+         hits.incrementAndGet();
+         return reference;
+      }
+
+      misses.incrementAndGet();
+      reference = delegate.lookup(name);
+      if (reference != null)
+         references.put(name, reference);
+      return reference;
+   }
+
+   /**
+    * Replaces the beans whose references are cached and drops all cached references.
+    *
+    * @param cacheableBeans the beans as "module/bean" names
+    */
+   public void invalidate(Set<String> cacheableBeans)
+   {
+      this.cacheableBeans = cacheableBeans;
+      references.clear();
+   }
+
+   public long getHits()
+   {
+      return hits.get();
+   }
+
+   public long getMisses()
+   {
+      return misses.get();
+   }
+
+   /*
+    * java:global[/app]/module/bean[!interface] of one of the cacheable beans
+    */
+   private boolean isCacheable(String name)
+   {
+      if (!name.startsWith(GLOBAL_PREFIX))
+         return false;
+
+      String path = name.substring(GLOBAL_PREFIX.length());
+      int interfaceSeparator = path.indexOf('!');
+      if (interfaceSeparator >= 0)
+         path = path.substring(0, interfaceSeparator);
+
+      int beanSeparator = path.lastIndexOf('/');
+      int moduleSeparator = beanSeparator > 0 ? path.lastIndexOf('/', beanSeparator - 1) : -1;
+      return beanSeparator > 0 && cacheableBeans.contains(path.substring(moduleSeparator + 1));
+   }
+}
@@ -0,0 +1,185 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat Middleware LLC, and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.arquillian.container.was.embedded_8;
+
+import java.util.Hashtable;
+
+import javax.naming.Binding;
+import javax.naming.Context;
+import javax.naming.Name;
+import javax.naming.NameClassPair;
+import javax.naming.NameParser;
+import javax.naming.NamingEnumeration;
+import javax.naming.NamingException;
+
+/**
+ * JNDI context that forwards every operation to the context returned by {@link #getDelegate()}.
+ *
+ * @version $Revision: $
+ */
+public abstract class DelegatingContext implements Context
+{
+   /**
+    * @return the context the operations are forwarded to
+    */
+   protected abstract Context getDelegate() throws NamingException;
+
+   public Object lookup(Name name) throws NamingException
+   {
+      return getDelegate().lookup(name);
+   }
+
+   public Object lookup(String name) throws NamingException
+   {
+      return getDelegate().lookup(name);
+   }
+
+   public void bind(Name name, Object obj) throws NamingException
+   {
+      getDelegate().bind(name, obj);
+   }
+
+   public void bind(String name, Object obj) throws NamingException
+   {
+      getDelegate().bind(name, obj);
+   }
+
+   public void rebind(Name name, Object obj) throws NamingException
+   {
+      getDelegate().rebind(name, obj);
+   }
+
+   public void rebind(String name, Object obj) throws NamingException
+   {
+      getDelegate().rebind(name, obj);
+   }
+
+   public void unbind(Name name) throws NamingException
+   {
+      getDelegate().unbind(name);
+   }
+
+   public void unbind(String name) throws NamingException
+   {
+      getDelegate().unbind(name);
+   }
+
+   public void rename(Name oldName, Name newName) throws NamingException
+   {
+      getDelegate().rename(oldName, newName);
+   }
+
+   public void rename(String oldName, String newName) throws NamingException
+   {
+      getDelegate().rename(oldName, newName);
+   }
+
+   public NamingEnumeration<NameClassPair> list(Name name) throws NamingException
+   {
+      return getDelegate().list(name);
+   }
+
+   public NamingEnumeration<NameClassPair> list(String name) throws NamingException
+   {
+      return getDelegate().list(name);
+   }
+
+   public NamingEnumeration<Binding> listBindings(Name name) throws NamingException
+   {
+      return getDelegate().listBindings(name);
+   }
+
+   public NamingEnumeration<Binding> listBindings(String name) throws NamingException
+   {
+      return getDelegate().listBindings(name);
+   }
+
+   public void destroySubcontext(Name name) throws NamingException
+   {
+      getDelegate().destroySubcontext(name);
+   }
+
+   public void destroySubcontext(String name) throws NamingException
+   {
+      getDelegate().destroySubcontext(name);
+   }
+
+   public Context createSubcontext(Name name) throws NamingException
+   {
+      return getDelegate().createSubcontext(name);
+   }
+
+   public Context createSubcontext(String name) throws NamingException
+   {
+      return getDelegate().createSubcontext(name);
+   }
+
+   public Object lookupLink(Name name) throws NamingException
+   {
+      return getDelegate().lookupLink(name);
+   }
+
+   public Object lookupLink(String name) throws NamingException
+   {
+      return getDelegate().lookupLink(name);
+   }
+
+   public NameParser getNameParser(Name name) throws NamingException
+   {
+      return getDelegate().getNameParser(name);
+   }
+
+   public NameParser getNameParser(String name) throws NamingException
+   {
+      return getDelegate().getNameParser(name);
+   }
+
+   public Name composeName(Name name, Name prefix) throws NamingException
+   {
+      return getDelegate().composeName(name, prefix);
+   }
+
+   public String composeName(String name, String prefix) throws NamingException
+   {
+      return getDelegate().composeName(name, prefix);
+   }
+
+   public Object addToEnvironment(String propName, Object propVal) throws NamingException
+   {
+      return getDelegate().addToEnvironment(propName, propVal);
+   }
+
+   public Object removeFromEnvironment(String propName) throws NamingException
+   {
+      return getDelegate().removeFromEnvironment(propName);
+   }
+
+   public Hashtable<?, ?> getEnvironment() throws NamingException
+   {
+      return getDelegate().getEnvironment();
+   }
+
+   public void close() throws NamingException
+   {
+      getDelegate().close();
+   }
+
+   public String getNameInNamespace() throws NamingException
+   {
+      return getDelegate().getNameInNamespace();
+   }
+}
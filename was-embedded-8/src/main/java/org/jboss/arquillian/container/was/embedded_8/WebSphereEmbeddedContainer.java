@@ -17,13 +17,29 @@
 package org.jboss.arquillian.container.was.embedded_8;
 
 import java.io.File;
+import java.io.FileFilter;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import javax.ejb.embeddable.EJBContainer;
 import javax.naming.Context;
+import javax.naming.NamingException;
 
 import org.jboss.arquillian.container.spi.client.container.DeployableContainer;
 import org.jboss.arquillian.container.spi.client.container.DeploymentException;
@@ -34,6 +50,7 @@ import org.jboss.arquillian.container.spi.context.annotation.ContainerScoped;
 import org.jboss.arquillian.core.api.InstanceProducer;
 import org.jboss.arquillian.core.api.annotation.Inject;
 import org.jboss.shrinkwrap.api.Archive;
+import org.jboss.shrinkwrap.api.exporter.ExplodedExporter;
 import org.jboss.shrinkwrap.api.exporter.ZipExporter;
 import org.jboss.shrinkwrap.descriptor.api.Descriptor;
 
@@ -53,10 +70,64 @@ public class WebSphereEmbeddedContainer implements DeployableContainer<WebSphere
    
    private static Logger log = Logger.getLogger(className);
    
+   private static final String CONFIG_FILE_NAME = "com.ibm.websphere.embeddable.configFileName";
+   private static final String TRANSACTION_LOG_DIRECTORY = "com.ibm.websphere.tx.tranLogDirectory";
+   private static final String INITIALIZE_EJBS_AT_STARTUP = "com.ibm.websphere.ejbcontainer.initializeEJBsAtStartup";
+   
    private WebSphereEmbeddedContainerConfiguration containerConfiguration;
    
    private EJBContainer ec;
    
+   /**
+    * Names and content digests of the modules the running container was created with.
+    */
+   private String ecModules;
+   
+   /**
+    * The deployed archives by name, started together by a single container.
+    */
+   private Map<String, Archive<?>> modules = new TreeMap<String, Archive<?>>();
+   
+   /**
+    * Name, and content digest if the container is reused, of every deployed archive.
+    */
+   private Map<String, String> moduleKeys = new TreeMap<String, String>();
+   
+   /**
+    * Content digest of every deployed archive, if the container is reused or exports are cached.
+    */
+   private Map<String, String> moduleDigests = new HashMap<String, String>();
+   
+   /**
+    * Starts the container with the deployed archives when it is first used.
+    */
+   private final Context deferredContext = new DeferredContext();
+   
+   /**
+    * Caches bean references looked up through the deferred context, null if disabled.
+    */
+   private CachingContext cachingContext;
+   
+   /**
+    * Stateless and singleton beans of every deployed archive, if lookups are cached.
+    */
+   private Map<String, Set<String>> moduleBeans = new HashMap<String, Set<String>>();
+   
+   /**
+    * Directory the exploded archives of this run are written to.
+    */
+   private File stagingDirectory;
+   
+   /**
+    * Directory holding the generated properties and transaction log of a fast boot.
+    */
+   private File fastBootDirectory;
+   
+   /**
+    * Container booted without modules by start(), closed before the first real boot.
+    */
+   private FutureTask<EJBContainer> warmUp;
+   
    /**
     * The JNDI Context for this container.
     */
@@ -75,6 +146,11 @@ public class WebSphereEmbeddedContainer implements DeployableContainer<WebSphere
       }
 	   
       this.containerConfiguration = configuration;
+      
+      if (configuration.isLookupCacheEnabled())
+      {
+         this.cachingContext = new CachingContext(deferredContext);
+      }
 	   
       if (log.isLoggable(Level.FINER)) {
          log.exiting(className, "setup");
@@ -87,7 +163,10 @@ public class WebSphereEmbeddedContainer implements DeployableContainer<WebSphere
          log.entering(className, "start");
       }
       
-      // There should be nothing to do here.
+      if (containerConfiguration.isWarmUpEnabled())
+      {
+         warmUpInBackground();
+      }
       
       if (log.isLoggable(Level.FINER)) {
          log.exiting(className, "start");
@@ -102,31 +181,66 @@ public class WebSphereEmbeddedContainer implements DeployableContainer<WebSphere
          log.finer("Archive provided to deploy method: " + archive.toString(true));
       }
       
-      // Save the archive to disk so it can be loaded by the container.
-      // For JNDI lookups to work correctly the archive name must match the
-      // one of the provided archive file.
-      String tmpDir = System.getProperty("java.io.tmpdir");
-      File exportedArchiveLocation = new File(tmpDir, archive.getName());
-      archive.as(ZipExporter.class).exportTo(exportedArchiveLocation, true);
+      String digest = null;
+      if (containerConfiguration.isContainerReuseEnabled() || containerConfiguration.getExportCacheDirectory() != null)
+      {
+         try
+         {
+            digest = ArchiveDigest.of(archive);
+         }
+         catch (IOException e)
+         {
+            throw new DeploymentException("Could not read archive " + archive.getName(), e);
+         }
+      }
       
-      // Create the properties object to pass to the embeddable container:
-      Map<String,Object> props = new HashMap<String,Object>();
+      // The embeddable container cannot add modules to a running instance, so
+      // it can only be reused for modules with identical names and content.
+      String module = archive.getName();
+      if (containerConfiguration.isContainerReuseEnabled())
+      {
+         module = module + "@" + digest;
+      }
+      else
+      {
+         closeContainer();
+      }
       
-      // Set the embeddable container configuration file if it has been
-      // provided in the arquillian configuration.
-      if (containerConfiguration.getEmbeddedProperties() != null)
-         props.put("com.ibm.websphere.embeddable.configFileName", containerConfiguration.getEmbeddedProperties());
-
-      // Specify the EJB modules to start when creating the container:
-      File[] ejbModules = new File[1];
-      ejbModules[0] = exportedArchiveLocation;
-      props.put(EJBContainer.MODULES, ejbModules);
+      synchronized (this)
+      {
+         modules.put(archive.getName(), archive);
+         moduleKeys.put(archive.getName(), module);
+         moduleDigests.put(archive.getName(), digest);
+         
+         if (cachingContext != null)
+         {
+            moduleBeans.put(archive.getName(), CacheableBeans.of(archive));
+            cachingContext.invalidate(getCacheableBeans());
+         }
+      }
       
-      // Start the Embeddable Container
-      ec = EJBContainer.createEJBContainer(props);
+      if (containerConfiguration.isDeferredStartEnabled())
+      {
+         log.fine("Deferring the start of the embeddable container for " + archive.getName());
+      }
+      else
+      {
+         try
+         {
+            startContainer();
+         }
+         catch (RuntimeException e)
+         {
+            // Arquillian does not undeploy a failed deployment, so it must not
+            // be started again with the archives deployed later
+            removeModule(archive.getName());
+            throw new DeploymentException("Could not start the embeddable container with " + archive.getName(), e);
+         }
+      }
       
-      // Set the JNDI Context
-      jndiContext.set(ec.getContext());
+      // Set the JNDI Context, which (re)starts the container with all deployed
+      // archives whenever they differ from the ones it is running.
+      jndiContext.set(cachingContext != null ? cachingContext : deferredContext);
       
       if (log.isLoggable(Level.FINER)) {
          log.exiting(className, "deploy");
@@ -141,8 +255,22 @@ public class WebSphereEmbeddedContainer implements DeployableContainer<WebSphere
          log.entering(className, "undeploy");
       }
       
-      // Close the Embeddable Container
-      ec.close();
+      removeModule(archive.getName());
+      
+      if (cachingContext != null)
+      {
+         log.fine("JNDI lookup cache: " + cachingContext.getHits() + " hits, " + cachingContext.getMisses() + " misses");
+      }
+      
+      if (containerConfiguration.isContainerReuseEnabled())
+      {
+         // Closed when a different set of modules is used or the container is stopped
+         log.fine("Keeping the embeddable container running for later deployments of " + archive.getName());
+      }
+      else
+      {
+         closeContainer();
+      }
       
       if (log.isLoggable(Level.FINER)) {
          log.exiting(className, "undeploy");
@@ -155,12 +283,484 @@ public class WebSphereEmbeddedContainer implements DeployableContainer<WebSphere
          log.entering(className, "stop");
       }
 
-      // There should be nothing to do here.
+      synchronized (this)
+      {
+         finishWarmUp();
+         closeContainer();
+         modules.clear();
+         moduleKeys.clear();
+         moduleDigests.clear();
+         moduleBeans.clear();
+         
+         if (cachingContext != null)
+         {
+            cachingContext.invalidate(getCacheableBeans());
+         }
+         
+         if (stagingDirectory != null)
+         {
+            deleteQuietly(stagingDirectory);
+            stagingDirectory = null;
+         }
+         
+         if (fastBootDirectory != null)
+         {
+            deleteQuietly(fastBootDirectory);
+            fastBootDirectory = null;
+         }
+      }
       
       if (log.isLoggable(Level.FINER)) {
          log.exiting(className, "stop");
       }
    }
+   
+   /*
+    * Forgets a deployed archive, so it is not started with the other archives anymore
+    */
+   private synchronized void removeModule(String name)
+   {
+      modules.remove(name);
+      moduleKeys.remove(name);
+      moduleDigests.remove(name);
+      
+      if (cachingContext != null)
+      {
+         moduleBeans.remove(name);
+         cachingContext.invalidate(getCacheableBeans());
+      }
+   }
+   
+   /*
+    * Returns the context of a container running all deployed archives, closing
+    * the running container first if it was created with other archives.
+    */
+   private synchronized Context startContainer()
+   {
+      if (modules.isEmpty())
+         throw new IllegalStateException("No archives are deployed to the embeddable container");
+      
+      String requestedModules = moduleKeys.values().toString();
+      if (ec != null && !requestedModules.equals(ecModules))
+      {
+         closeContainer();
+      }
+      
+      if (ec == null)
+      {
+         finishWarmUp();
+         
+         log.fine("Starting the embeddable container with modules " + requestedModules);
+         
+         // Save the archives to disk so they can be loaded by the container.
+         File[] ejbModules = new File[modules.size()];
+         int i = 0;
+         for (Archive<?> archive : modules.values())
+         {
+            ejbModules[i++] = exportModule(archive);
+         }
+         
+         Map<String,Object> props = createContainerProperties();
+
+         // Specify the EJB modules to start when creating the container:
+         props.put(EJBContainer.MODULES, ejbModules);
+         
+         // Start the Embeddable Container
+         long bootStart = System.nanoTime();
+         ec = EJBContainer.createEJBContainer(props);
+         ecModules = requestedModules;
+         
+         log.info("Started the embeddable container with modules " + requestedModules + " in "
+               + (System.nanoTime() - bootStart) / 1000000 + " ms");
+      }
+      
+      return ec.getContext();
+   }
+   
+   /*
+    * Returns the beans of all deployed archives whose references can be cached
+    */
+   private synchronized Set<String> getCacheableBeans()
+   {
+      Set<String> beans = new HashSet<String>();
+      for (Set<String> archiveBeans : moduleBeans.values())
+      {
+         beans.addAll(archiveBeans);
+      }
+      return beans;
+   }
+   
+   /*
+    * Creates the properties object to pass to the embeddable container
+    */
+   private synchronized Map<String,Object> createContainerProperties()
+   {
+      Map<String,Object> props = new HashMap<String,Object>();
+      
+      // Set the embeddable container configuration file if it has been
+      // provided in the arquillian configuration, or generate one for a
+      // fast boot.
+      if (containerConfiguration.isFastBootEnabled())
+         props.put(CONFIG_FILE_NAME, writeFastBootProperties().getPath());
+      else if (containerConfiguration.getEmbeddedProperties() != null)
+         props.put(CONFIG_FILE_NAME, containerConfiguration.getEmbeddedProperties());
+      
+      return props;
+   }
+   
+   /*
+    * Writes the embeddedProperties, if any, merged with the fast boot settings to a
+    * properties file of this run. The fast boot settings take precedence.
+    */
+   private File writeFastBootProperties()
+   {
+      if (fastBootDirectory == null)
+      {
+         fastBootDirectory = createTempDirectory(new File(containerConfiguration.getTransactionLogDirectory()));
+      }
+      
+      File propertiesFile = new File(fastBootDirectory, "embedded.properties");
+      if (propertiesFile.isFile())
+         return propertiesFile;
+      
+      try
+      {
+         Properties properties = new Properties();
+         if (containerConfiguration.getEmbeddedProperties() != null)
+         {
+            InputStream in = new FileInputStream(containerConfiguration.getEmbeddedProperties());
+            try
+            {
+               properties.load(in);
+            }
+            finally
+            {
+               in.close();
+            }
+         }
+         
+         // A transaction log created for this run never has transactions to recover
+         File transactionLogDirectory = new File(fastBootDirectory, "tranlog");
+         if (!transactionLogDirectory.mkdir())
+            throw new IOException("Unable to create directory " + transactionLogDirectory);
+         properties.setProperty(TRANSACTION_LOG_DIRECTORY, transactionLogDirectory.getAbsolutePath());
+         
+         if (containerConfiguration.isLazyBeanInitializationEnabled())
+            properties.setProperty(INITIALIZE_EJBS_AT_STARTUP, "false");
+         
+         OutputStream out = new FileOutputStream(propertiesFile);
+         try
+         {
+            properties.store(out, "Embeddable container fast boot properties");
+         }
+         finally
+         {
+            out.close();
+         }
+      }
+      catch (IOException e)
+      {
+         throw new IllegalStateException("Unable to write the fast boot properties to " + propertiesFile, e);
+      }
+      return propertiesFile;
+   }
+   
+   /*
+    * Boots a container without modules on a background thread, so the runtime
+    * classes are loaded and initialized by the time the first archive is deployed
+    */
+   private void warmUpInBackground()
+   {
+      final Map<String,Object> props = createContainerProperties();
+      props.put(EJBContainer.MODULES, new File[0]);
+      warmUp = new FutureTask<EJBContainer>(new Callable<EJBContainer>() {
+         public EJBContainer call() throws Exception {
+            long bootStart = System.nanoTime();
+            EJBContainer container = EJBContainer.createEJBContainer(props);
+            log.info("Started the warm-up embeddable container in " + (System.nanoTime() - bootStart) / 1000000 + " ms");
+            return container;
+         }
+      });
+      Thread thread = new Thread(warmUp, "arquillian-was-embedded-warm-up");
+      thread.setDaemon(true);
+      thread.start();
+   }
+   
+   /*
+    * Waits for the warm-up boot and closes its container, as only one embeddable
+    * container can run at a time. A failed warm-up does not affect the real boot.
+    */
+   private synchronized void finishWarmUp()
+   {
+      if (warmUp == null)
+         return;
+      
+      try
+      {
+         warmUp.get().close();
+         log.fine("Closed the warm-up embeddable container");
+      }
+      catch (ExecutionException e)
+      {
+         log.log(Level.WARNING, "Warm-up of the embeddable container failed, the first deployment boots a cold container",
+               e.getCause());
+      }
+      catch (InterruptedException e)
+      {
+         Thread.currentThread().interrupt();
+      }
+      finally
+      {
+         warmUp = null;
+      }
+   }
+   
+   /*
+    * Writes the archive to disk as a zip file or, if enabled, as an exploded directory.
+    * For JNDI lookups to work correctly the name of the file or directory must match
+    * the name of the archive.
+    */
+   private File exportModule(Archive<?> archive)
+   {
+      if (containerConfiguration.getExportCacheDirectory() != null)
+         return exportCachedModule(archive, moduleDigests.get(archive.getName()));
+      
+      if (containerConfiguration.isExplodedExportEnabled())
+      {
+         File stagingDirectory = getStagingDirectory();
+         delete(new File(stagingDirectory, archive.getName()));
+         return archive.as(ExplodedExporter.class).exportExploded(stagingDirectory, archive.getName());
+      }
+      
+      String tmpDir = System.getProperty("java.io.tmpdir");
+      File exportedArchiveLocation = new File(tmpDir, archive.getName());
+      archive.as(ZipExporter.class).exportTo(exportedArchiveLocation, true);
+      return exportedArchiveLocation;
+   }
+   
+   /*
+    * Returns <cache>/<digest>/<archive name>, exporting the archive there first if it
+    * has not been exported before. The export is written under a temporary name and
+    * renamed once complete, so processes sharing the cache never load a partial export
+    * and never overwrite one another's modules.
+    */
+   private File exportCachedModule(Archive<?> archive, String digest)
+   {
+      boolean exploded = containerConfiguration.isExplodedExportEnabled();
+      File directory = new File(containerConfiguration.getExportCacheDirectory(), exploded ? digest + "-exploded" : digest);
+      File cachedArchiveLocation = new File(directory, archive.getName());
+      if (cachedArchiveLocation.exists())
+      {
+         log.fine("Using cached export " + cachedArchiveLocation);
+         directory.setLastModified(System.currentTimeMillis());
+         return cachedArchiveLocation;
+      }
+      
+      if (!directory.mkdirs() && !directory.isDirectory())
+         throw new IllegalStateException("Unable to create directory " + directory);
+      
+      File temp;
+      try
+      {
+         temp = File.createTempFile("export", ".tmp", directory);
+      }
+      catch (IOException e)
+      {
+         throw new IllegalStateException("Unable to create a temporary file in " + directory, e);
+      }
+      try
+      {
+         if (exploded)
+         {
+            delete(temp);
+            archive.as(ExplodedExporter.class).exportExploded(directory, temp.getName());
+         }
+         else
+         {
+            archive.as(ZipExporter.class).exportTo(temp, true);
+         }
+         
+         // Losing the race to another process leaves an identical export in place
+         if (!temp.renameTo(cachedArchiveLocation) && !cachedArchiveLocation.exists())
+            throw new IllegalStateException("Unable to store export " + cachedArchiveLocation);
+      }
+      finally
+      {
+         delete(temp);
+      }
+      
+      evictCachedModules();
+      return cachedArchiveLocation;
+   }
+   
+   /*
+    * Removes the least recently used exports once the cache exceeds its maximum size.
+    * The exports of the deployed archives are kept, since a container may be using them.
+    */
+   private void evictCachedModules()
+   {
+      Set<String> retained = new HashSet<String>();
+      for (String digest : moduleDigests.values())
+      {
+         retained.add(digest);
+         retained.add(digest + "-exploded");
+      }
+      
+      File[] entries = new File(containerConfiguration.getExportCacheDirectory()).listFiles(new FileFilter() {
+         public boolean accept(File file) {
+            return file.isDirectory();
+         }
+      });
+      if (entries == null)
+         return;
+      
+      long size = 0;
+      final Map<File, Long> lastUsed = new HashMap<File, Long>();
+      for (File entry : entries)
+      {
+         size += sizeOf(entry);
+         lastUsed.put(entry, entry.lastModified());
+      }
+      
+      Arrays.sort(entries, new Comparator<File>() {
+         public int compare(File first, File second) {
+            long difference = lastUsed.get(first) - lastUsed.get(second);
+            return difference < 0 ? -1 : (difference > 0 ? 1 : 0);
+         }
+      });
+      long maxSize = containerConfiguration.getExportCacheMaxSize() * 1024L * 1024L;
+      for (int i = 0; i < entries.length && size > maxSize; i++)
+      {
+         if (retained.contains(entries[i].getName()))
+            continue;
+         
+         long length = sizeOf(entries[i]);
+         try
+         {
+            delete(entries[i]);
+            log.fine("Evicted export " + entries[i] + " from the cache");
+            size -= length;
+         }
+         catch (IllegalStateException e)
+         {
+            log.fine("Could not evict export " + entries[i] + ": " + e.getMessage());
+         }
+      }
+   }
+   
+   private static long sizeOf(File file)
+   {
+      File[] children = file.listFiles();
+      if (children == null)
+         return file.length();
+      
+      long size = 0;
+      for (File child : children)
+      {
+         size += sizeOf(child);
+      }
+      return size;
+   }
+   
+   /*
+    * Returns the staging directory of this run, creating it on first use
+    */
+   private synchronized File getStagingDirectory()
+   {
+      if (stagingDirectory == null)
+      {
+         stagingDirectory = createTempDirectory(null);
+      }
+      return stagingDirectory;
+   }
+   
+   /*
+    * Creates a new directory in the parent directory, or in java.io.tmpdir if it is null
+    */
+   private static File createTempDirectory(File parent)
+   {
+      try
+      {
+         File directory = File.createTempFile("arquillian-was-embedded", "", parent);
+         if (!directory.delete() || !directory.mkdir())
+            throw new IllegalStateException("Unable to create directory " + directory);
+         return directory;
+      }
+      catch (IOException e)
+      {
+         throw new IllegalStateException("Unable to create a directory in " + parent, e);
+      }
+   }
+   
+   /*
+    * Removes a directory of this run, logging rather than failing if it cannot be removed
+    */
+   private static void deleteQuietly(File directory)
+   {
+      try
+      {
+         delete(directory);
+      }
+      catch (IllegalStateException e)
+      {
+         log.warning("Could not remove directory " + directory + ": " + e.getMessage());
+      }
+   }
+   
+   private static void delete(File file)
+   {
+      File[] children = file.listFiles();
+      if (children != null)
+      {
+         for (File child : children)
+         {
+            delete(child);
+         }
+      }
+      if (file.exists() && !file.delete())
+         throw new IllegalStateException("Unable to delete " + file);
+   }
+   
+   /*
+    * Closes the Embeddable Container if it is running
+    */
+   private synchronized void closeContainer()
+   {
+      if (ec != null)
+      {
+         ec.close();
+         ec = null;
+         ecModules = null;
+      }
+   }
+   
+   /*
+    * Context handed to the tests, backed by the container running all deployed archives
+    */
+   private class DeferredContext extends DelegatingContext
+   {
+      @Override
+      protected Context getDelegate() throws NamingException
+      {
+         try
+         {
+            return startContainer();
+         }
+         catch (RuntimeException e)
+         {
+            NamingException ne = new NamingException("Could not start the embeddable container");
+            ne.setRootCause(e);
+            throw ne;
+         }
+      }
+      
+      @Override
+      public void close() throws NamingException
+      {
+         // The naming context belongs to the container and is closed with it, so
+         // closing must neither start a container nor affect later lookups
+      }
+   }
 
 	public ProtocolDescription getDefaultProtocol() {
       if (log.isLoggable(Level.FINER)) {
@@ -31,6 +31,79 @@ public class WebSphereEmbeddedContainerConfiguration implements
       ContainerConfiguration {
    
    private String embeddedProperties;
+   
+   /**
+    * Keeps the embeddable container running after undeploy and reuses it when the
+    * deployed archives have the same names and content as the ones it was started
+    * with, instead of booting a new one. The container is closed when a different
+    * set of archives is deployed or the container is stopped.
+    */
+   private boolean containerReuseEnabled = false;
+   
+   /**
+    * Defers starting the embeddable container until the JNDI context is first used,
+    * so that all archives deployed before then are started by a single container
+    * instead of booting a new one for every deployment.
+    */
+   private boolean deferredStartEnabled = false;
+   
+   /**
+    * Hands the archives to the embeddable container as exploded directories in a
+    * staging directory created for each run, instead of as zip files that have to
+    * be compressed and then extracted again by the container.
+    */
+   private boolean explodedExportEnabled = false;
+   
+   /**
+    * Directory the archives are exported to, under a subdirectory named after the
+    * digest of their content. An archive that has been exported before is not
+    * exported again, and processes running in parallel can share the directory.
+    * Archives are exported to java.io.tmpdir if it is not set.
+    */
+   private String exportCacheDirectory;
+   
+   /**
+    * Maximum total size in megabytes of the exports in the exportCacheDirectory. The
+    * least recently used exports are removed when it is exceeded, except for those of
+    * the archives currently deployed by this container. Exports used by other processes
+    * sharing the directory are not known, so it should leave room for them.
+    */
+   private int exportCacheMaxSize = 1024;
+   
+   /**
+    * Boots an embeddable container without modules in the background when the
+    * container is started, so that the runtime is loaded and initialized by the
+    * time the first archive is deployed. The warm-up container is closed before
+    * the container for the deployed archives is started.
+    */
+   private boolean warmUpEnabled = false;
+   
+   /**
+    * Caches the references of stateless and singleton session beans looked up by their
+    * java:global names, so repeated lookups do not go through the embeddable naming
+    * provider. The cache is invalidated whenever an archive is deployed or undeployed.
+    */
+   private boolean lookupCacheEnabled = false;
+   
+   /**
+    * Boots the embeddable container with settings that favour startup time. The
+    * embeddedProperties, if any, are merged with these settings into a properties
+    * file generated for each run, with the settings below taking precedence.
+    */
+   private boolean fastBootEnabled = false;
+   
+   /**
+    * Directory in which a fresh transaction log is created for every run when
+    * booting fast, so there are never transactions to recover at startup. Defaults
+    * to the tmpfs mounted at /dev/shm if there is one, java.io.tmpdir otherwise.
+    */
+   private String transactionLogDirectory = new File("/dev/shm").isDirectory() ? "/dev/shm" : System.getProperty("java.io.tmpdir");
+   
+   /**
+    * Initializes beans when they are first used rather than when their module is
+    * started, if booting fast.
+    */
+   private boolean lazyBeanInitializationEnabled = true;
 
    @Override
    public void validate() throws ConfigurationException {
@@ -39,6 +112,23 @@ public class WebSphereEmbeddedContainerConfiguration implements
             throw new ConfigurationException("Cannot access the embeddedProperties file " + embeddedProperties);
          }
       }
+      if (exportCacheDirectory != null) {
+         File directory = new File(exportCacheDirectory);
+         if (directory.exists() && !directory.isDirectory()) {
+            throw new ConfigurationException("The exportCacheDirectory " + exportCacheDirectory + " is not a directory");
+         }
+         if (exportCacheMaxSize <= 0) {
+            throw new ConfigurationException("The exportCacheMaxSize must be greater than 0");
+         }
+      }
+      if (fastBootEnabled) {
+         if (transactionLogDirectory == null || !new File(transactionLogDirectory).isDirectory()) {
+            throw new ConfigurationException("The transactionLogDirectory " + transactionLogDirectory + " is not a directory");
+         }
+         if (!new File(transactionLogDirectory).canWrite()) {
+            throw new ConfigurationException("Cannot write to the transactionLogDirectory " + transactionLogDirectory);
+         }
+      }
    }
 
    public String getEmbeddedProperties() {
@@ -49,4 +139,84 @@ public class WebSphereEmbeddedContainerConfiguration implements
       this.embeddedProperties = embeddedProperties;
    }
 
+   public boolean isContainerReuseEnabled() {
+      return containerReuseEnabled;
+   }
+
+   public void setContainerReuseEnabled(boolean containerReuseEnabled) {
+      this.containerReuseEnabled = containerReuseEnabled;
+   }
+
+   public boolean isDeferredStartEnabled() {
+      return deferredStartEnabled;
+   }
+
+   public void setDeferredStartEnabled(boolean deferredStartEnabled) {
+      this.deferredStartEnabled = deferredStartEnabled;
+   }
+
+   public boolean isExplodedExportEnabled() {
+      return explodedExportEnabled;
+   }
+
+   public void setExplodedExportEnabled(boolean explodedExportEnabled) {
+      this.explodedExportEnabled = explodedExportEnabled;
+   }
+
+   public String getExportCacheDirectory() {
+      return exportCacheDirectory;
+   }
+
+   public void setExportCacheDirectory(String exportCacheDirectory) {
+      this.exportCacheDirectory = exportCacheDirectory;
+   }
+
+   public int getExportCacheMaxSize() {
+      return exportCacheMaxSize;
+   }
+
+   public void setExportCacheMaxSize(int exportCacheMaxSize) {
+      this.exportCacheMaxSize = exportCacheMaxSize;
+   }
+
+   public boolean isWarmUpEnabled() {
+      return warmUpEnabled;
+   }
+
+   public void setWarmUpEnabled(boolean warmUpEnabled) {
+      this.warmUpEnabled = warmUpEnabled;
+   }
+
+   public boolean isLookupCacheEnabled() {
+      return lookupCacheEnabled;
+   }
+
+   public void setLookupCacheEnabled(boolean lookupCacheEnabled) {
+      this.lookupCacheEnabled = lookupCacheEnabled;
+   }
+
+   public boolean isFastBootEnabled() {
+      return fastBootEnabled;
+   }
+
+   public void setFastBootEnabled(boolean fastBootEnabled) {
+      this.fastBootEnabled = fastBootEnabled;
+   }
+
+   public String getTransactionLogDirectory() {
+      return transactionLogDirectory;
+   }
+
+   public void setTransactionLogDirectory(String transactionLogDirectory) {
+      this.transactionLogDirectory = transactionLogDirectory;
+   }
+
+   public boolean isLazyBeanInitializationEnabled() {
+      return lazyBeanInitializationEnabled;
+   }
+
+   public void setLazyBeanInitializationEnabled(boolean lazyBeanInitializationEnabled) {
+      this.lazyBeanInitializationEnabled = lazyBeanInitializationEnabled;
+   }
+
 }
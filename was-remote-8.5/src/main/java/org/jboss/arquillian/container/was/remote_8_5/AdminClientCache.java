@@ -0,0 +1,151 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2010-2011, Red Hat Middleware LLC, and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.arquillian.container.was.remote_8_5;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.ibm.websphere.management.AdminClient;
+import com.ibm.websphere.management.AdminClientFactory;
+import com.ibm.websphere.management.exception.ConnectorException;
+
+/**
+ * JVM wide cache of AdminClient connections.
+ *
+ * Connections are keyed by the complete set of connector properties (host, port,
+ * connector type, credentials and SSL settings), so every container and every
+ * restart of a container talking to the same server shares one connection and
+ * pays for the SSL handshake and security login only once. Cached connections
+ * are checked with {@link AdminClient#getServerMBean()} before they are handed
+ * out again and are closed by a shutdown hook when the JVM exits.
+ */
+public class AdminClientCache
+{
+   private static Logger log = Logger.getLogger(AdminClientCache.class.getName());
+
+   private static final Map<Properties, AdminClient> adminClients = new HashMap<Properties, AdminClient>();
+
+   private static Thread shutdownHook;
+
+   private AdminClientCache()
+   {
+   }
+
+   /**
+    * Returns a live AdminClient for the given connector properties, creating it if
+    * no cached connection exists or the cached one no longer responds.
+    */
+   public static synchronized AdminClient getAdminClient(Properties connectorProperties) throws ConnectorException
+   {
+      Properties key = new Properties();
+      key.putAll(connectorProperties);
+
+      AdminClient adminClient = adminClients.get(key);
+      if (adminClient != null)
+      {
+         if (isAlive(adminClient))
+         {
+            log.fine("Reusing AdminClient for " + describe(key));
+            return adminClient;
+         }
+         log.info("Cached AdminClient for " + describe(key) + " is no longer alive, reconnecting");
+         adminClients.remove(key);
+         close(adminClient);
+      }
+
+      log.fine("Creating AdminClient for " + describe(key));
+      adminClient = AdminClientFactory.createAdminClient(key);
+      adminClients.put(key, adminClient);
+
+      if (shutdownHook == null)
+      {
+         shutdownHook = new Thread("AdminClientCache shutdown")
+         {
+            @Override
+            public void run()
+            {
+               closeAll();
+            }
+         };
+         Runtime.getRuntime().addShutdownHook(shutdownHook);
+      }
+      return adminClient;
+   }
+
+   /**
+    * Closes and forgets all cached connections.
+    */
+   public static void closeAll()
+   {
+      List<AdminClient> closing;
+      synchronized (AdminClientCache.class)
+      {
+         closing = new ArrayList<AdminClient>(adminClients.values());
+         adminClients.clear();
+      }
+      for (AdminClient adminClient : closing)
+      {
+         close(adminClient);
+      }
+   }
+
+   private static boolean isAlive(AdminClient adminClient)
+   {
+      try
+      {
+         return adminClient.getServerMBean() != null;
+      }
+      catch (Exception e)
+      {
+         log.log(Level.FINE, "AdminClient liveness check failed", e);
+         return false;
+      }
+   }
+
+   /*
+    * The AdminClient interface has no close operation, but the connector
+    * implementations behind it release their sockets through a public close method.
+    */
+   private static void close(AdminClient adminClient)
+   {
+      try
+      {
+         Method close = adminClient.getClass().getMethod("close");
+         close.invoke(adminClient);
+      }
+      catch (NoSuchMethodException e)
+      {
+         log.finer("AdminClient " + adminClient.getClass().getName() + " has no close method");
+      }
+      catch (Exception e)
+      {
+         log.log(Level.FINE, "Unable to close AdminClient", e);
+      }
+   }
+
+   private static String describe(Properties key)
+   {
+      return key.getProperty(AdminClient.CONNECTOR_TYPE) + "://" + key.getProperty(AdminClient.USERNAME) + "@"
+            + key.getProperty(AdminClient.CONNECTOR_HOST) + ":" + key.getProperty(AdminClient.CONNECTOR_PORT);
+   }
+}
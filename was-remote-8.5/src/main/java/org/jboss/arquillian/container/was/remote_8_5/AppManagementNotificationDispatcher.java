@@ -0,0 +1,123 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2010-2011, Red Hat Middleware LLC, and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.arquillian.container.was.remote_8_5;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.management.Notification;
+import javax.management.NotificationFilterSupport;
+import javax.management.NotificationListener;
+import javax.management.ObjectName;
+
+import com.ibm.websphere.management.AdminClient;
+import com.ibm.websphere.management.application.AppConstants;
+import com.ibm.websphere.management.application.AppNotification;
+
+/**
+ * Single notification listener on the AppManagement MBean that routes each
+ * {@link AppNotification} to the listeners registered for its task and application.
+ *
+ * The dispatcher is registered once per container start, so individual install,
+ * update, uninstall and distribution operations neither look up the AppManagement
+ * MBean nor add and remove listeners on the server.
+ */
+public class AppManagementNotificationDispatcher implements NotificationListener
+{
+   private static Logger log = Logger.getLogger(AppManagementNotificationDispatcher.class.getName());
+
+   private AdminClient adminClient;
+   private ObjectName appManagementObjectName;
+   private List<Registration> registrations = new CopyOnWriteArrayList<Registration>();
+
+   public AppManagementNotificationDispatcher(AdminClient adminClient) throws Exception
+   {
+      this.adminClient = adminClient;
+      this.appManagementObjectName = (ObjectName) adminClient.queryNames(
+            new ObjectName("WebSphere:type=AppManagement,*"), null).iterator().next();
+
+      NotificationFilterSupport filterSupport = new NotificationFilterSupport();
+      filterSupport.enableType(AppConstants.NotificationType);
+      adminClient.addNotificationListener(appManagementObjectName, this, filterSupport, null);
+   }
+
+   /**
+    * Routes notifications of the given task for the given application to the listener until it is unregistered.
+    */
+   public void register(String taskName, String appName, NotificationListener listener)
+   {
+      registrations.add(new Registration(taskName, appName, listener));
+   }
+
+   public void unregister(NotificationListener listener)
+   {
+      for (Registration registration : registrations)
+      {
+         if (registration.listener == listener)
+            registrations.remove(registration);
+      }
+   }
+
+   /**
+    * Removes the dispatcher from the AppManagement MBean.
+    */
+   public void close()
+   {
+      registrations.clear();
+      try
+      {
+         adminClient.removeNotificationListener(appManagementObjectName, this);
+      }
+      catch (Exception e)
+      {
+         log.log(Level.FINE, "Unable to remove AppManagement notification listener", e);
+      }
+   }
+
+   public void handleNotification(Notification notification, Object handback)
+   {
+      AppNotification appNotification = (AppNotification) notification.getUserData();
+      String appName = appNotification.props == null ? null
+            : appNotification.props.getProperty(AppConstants.APPDEPL_APPNAME);
+
+      for (Registration registration : registrations)
+      {
+         // Notifications that do not name their application go to every operation of the task
+         if (registration.taskName.equals(appNotification.taskName)
+               && (appName == null || appName.equals(registration.appName)))
+         {
+            registration.listener.handleNotification(notification, handback);
+         }
+      }
+   }
+
+   private static class Registration
+   {
+      private String taskName;
+      private String appName;
+      private NotificationListener listener;
+
+      Registration(String taskName, String appName, NotificationListener listener)
+      {
+         this.taskName = taskName;
+         this.appName = appName;
+         this.listener = listener;
+      }
+   }
+}
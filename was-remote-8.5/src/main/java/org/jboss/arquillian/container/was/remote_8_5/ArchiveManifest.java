@@ -0,0 +1,219 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2010-2011, Red Hat Middleware LLC, and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.arquillian.container.was.remote_8_5;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import org.jboss.shrinkwrap.api.Archive;
+import org.jboss.shrinkwrap.api.Node;
+import org.jboss.shrinkwrap.api.asset.ArchiveAsset;
+import org.jboss.shrinkwrap.api.asset.Asset;
+
+/**
+ * Content digests of the entries of a ShrinkWrap archive.
+ *
+ * The digests are computed from the archive content rather than from an exported
+ * zip file, because exported zip entries carry timestamps and would never compare
+ * equal between two exports of the same archive. Nested archives are digested
+ * recursively for the same reason.
+ *
+ * The application view of an enterprise archive lists the entries of its modules
+ * individually, prefixed with the module URI, which is the layout WebSphere uses
+ * for partial application updates.
+ */
+public class ArchiveManifest
+{
+   private static final String DIGEST_ALGORITHM = "SHA-256";
+
+   private SortedMap<String, String> entries = new TreeMap<String, String>();
+
+   private Set<String> modules = new TreeSet<String>();
+
+   private ArchiveManifest()
+   {
+   }
+
+   /**
+    * Creates the manifest of the given archive.
+    */
+   public static ArchiveManifest of(Archive<?> archive) throws IOException
+   {
+      ArchiveManifest manifest = new ArchiveManifest();
+      for (Map.Entry<?, Node> content : archive.getContent().entrySet())
+      {
+         Node node = content.getValue();
+         Asset asset = node.getAsset();
+         if (asset == null)
+            continue;
+         manifest.entries.put(node.getPath().get(), digestOf(asset));
+      }
+      return manifest;
+   }
+
+   /**
+    * Creates the application view of the given archive, in which the entries of the
+    * modules packaged at the root of the archive are listed individually.
+    */
+   public static ArchiveManifest ofApplication(Archive<?> application) throws IOException
+   {
+      ArchiveManifest manifest = new ArchiveManifest();
+      for (Map.Entry<?, Node> content : application.getContent().entrySet())
+      {
+         Node node = content.getValue();
+         Asset asset = node.getAsset();
+         if (asset == null)
+            continue;
+         String path = node.getPath().get();
+         if (asset instanceof ArchiveAsset && path.lastIndexOf('/') == 0)
+         {
+            String module = path.substring(1);
+            manifest.modules.add(module);
+            for (Map.Entry<String, String> moduleEntry : of(((ArchiveAsset) asset).getArchive()).entries.entrySet())
+            {
+               manifest.entries.put(path + moduleEntry.getKey(), moduleEntry.getValue());
+            }
+         }
+         else
+         {
+            manifest.entries.put(path, digestOf(asset));
+         }
+      }
+      return manifest;
+   }
+
+   /**
+    * @return the URIs of the modules listed individually in the application view
+    */
+   public Set<String> getModules()
+   {
+      return Collections.unmodifiableSet(modules);
+   }
+
+   /**
+    * @return the paths of the entries that were added or changed since the previous manifest
+    */
+   public Set<String> getChangedEntries(ArchiveManifest previous)
+   {
+      Set<String> changed = new TreeSet<String>();
+      for (Map.Entry<String, String> entry : entries.entrySet())
+      {
+         if (!entry.getValue().equals(previous.entries.get(entry.getKey())))
+            changed.add(entry.getKey());
+      }
+      return changed;
+   }
+
+   /**
+    * @return the paths of the entries of the previous manifest that no longer exist
+    */
+   public Set<String> getRemovedEntries(ArchiveManifest previous)
+   {
+      Set<String> removed = new TreeSet<String>(previous.entries.keySet());
+      removed.removeAll(entries.keySet());
+      return removed;
+   }
+
+   /**
+    * @return the hex encoded digest of every entry, keyed and sorted by the entry path
+    */
+   public Map<String, String> getEntries()
+   {
+      return Collections.unmodifiableMap(entries);
+   }
+
+   /**
+    * @return a hex encoded digest over all entry paths and their contents
+    */
+   public String getDigest()
+   {
+      MessageDigest digest = newDigest();
+      for (Map.Entry<String, String> entry : entries.entrySet())
+      {
+         update(digest, entry.getKey());
+         update(digest, entry.getValue());
+      }
+      return toHex(digest.digest());
+   }
+
+   static String digestOf(Asset asset) throws IOException
+   {
+      if (asset instanceof ArchiveAsset)
+         return of(((ArchiveAsset) asset).getArchive()).getDigest();
+
+      MessageDigest digest = newDigest();
+      InputStream in = asset.openStream();
+      try
+      {
+         byte[] buffer = new byte[8192];
+         int read;
+         while ((read = in.read(buffer)) != -1)
+         {
+            digest.update(buffer, 0, read);
+         }
+      }
+      finally
+      {
+         in.close();
+      }
+      return toHex(digest.digest());
+   }
+
+   static MessageDigest newDigest()
+   {
+      try
+      {
+         return MessageDigest.getInstance(DIGEST_ALGORITHM);
+      }
+      catch (NoSuchAlgorithmException e)
+      {
+         throw new IllegalStateException(DIGEST_ALGORITHM + " is not supported by this JVM", e);
+      }
+   }
+
+   static void update(MessageDigest digest, String value)
+   {
+      try
+      {
+         digest.update(value.getBytes("UTF-8"));
+         digest.update((byte) 0);
+      }
+      catch (UnsupportedEncodingException e)
+      {
+         throw new IllegalStateException(e);
+      }
+   }
+
+   static String toHex(byte[] bytes)
+   {
+      StringBuilder hex = new StringBuilder(bytes.length * 2);
+      for (byte b : bytes)
+      {
+         hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+      }
+      return hex.toString();
+   }
+}
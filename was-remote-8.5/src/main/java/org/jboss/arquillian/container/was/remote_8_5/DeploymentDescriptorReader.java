@@ -0,0 +1,207 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2010-2011, Red Hat Middleware LLC, and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.arquillian.container.was.remote_8_5;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Streaming reader for the deployment descriptors returned by the J2EEApplication
+ * and WebModule MBeans.
+ *
+ * The namespace is taken from the root element, so Java EE, J2EE 1.4 and DTD based
+ * descriptors without a namespace are all read in a single pass. The underlying
+ * {@link XMLInputFactory} is configured once and shared, which is safe as long as
+ * it is not reconfigured.
+ */
+public class DeploymentDescriptorReader
+{
+   private static final XMLInputFactory inputFactory = createInputFactory();
+
+   private DeploymentDescriptorReader()
+   {
+   }
+
+   /**
+    * A web module declared in application.xml.
+    */
+   public static class WebModule
+   {
+      private String webUri = "";
+      private String contextRoot = "";
+
+      public String getWebUri()
+      {
+         return webUri;
+      }
+
+      public String getContextRoot()
+      {
+         return contextRoot;
+      }
+   }
+
+   /**
+    * Reads the web modules from an application.xml deployment descriptor.
+    */
+   public static List<WebModule> readWebModules(String applicationDD) throws XMLStreamException
+   {
+      List<WebModule> webModules = new ArrayList<WebModule>();
+      XMLStreamReader reader = inputFactory.createXMLStreamReader(new StringReader(applicationDD));
+      try
+      {
+         String namespace = readRootNamespace(reader, "application");
+         if (namespace == null)
+            return webModules;
+
+         // Depth 1 is application, 2 is module and 3 is web
+         int depth = 1;
+         WebModule webModule = null;
+         while (reader.hasNext())
+         {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT)
+            {
+               depth++;
+               if (!namespace.equals(namespaceOf(reader)))
+                  continue;
+               String name = reader.getLocalName();
+               if (depth == 3 && name.equals("web"))
+               {
+                  webModule = new WebModule();
+                  webModules.add(webModule);
+               }
+               else if (depth == 4 && webModule != null && name.equals("web-uri"))
+               {
+                  webModule.webUri = reader.getElementText();
+                  depth--;
+               }
+               else if (depth == 4 && webModule != null && name.equals("context-root"))
+               {
+                  webModule.contextRoot = reader.getElementText();
+                  depth--;
+               }
+            }
+            else if (event == XMLStreamConstants.END_ELEMENT)
+            {
+               if (depth == 3)
+                  webModule = null;
+               depth--;
+            }
+         }
+      }
+      finally
+      {
+         reader.close();
+      }
+      return webModules;
+   }
+
+   /**
+    * Reads the url-pattern of every servlet-mapping from a web.xml deployment descriptor.
+    * Mappings with several patterns report the last one, mappings without a pattern
+    * are reported as null.
+    */
+   public static List<String> readServletMappingUrlPatterns(String webmoduleDD) throws XMLStreamException
+   {
+      List<String> urlPatterns = new ArrayList<String>();
+      XMLStreamReader reader = inputFactory.createXMLStreamReader(new StringReader(webmoduleDD));
+      try
+      {
+         String namespace = readRootNamespace(reader, "web-app");
+         if (namespace == null)
+            return urlPatterns;
+
+         // Depth 1 is web-app and 2 is servlet-mapping
+         int depth = 1;
+         boolean inServletMapping = false;
+         String urlPattern = null;
+         while (reader.hasNext())
+         {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT)
+            {
+               depth++;
+               if (!namespace.equals(namespaceOf(reader)))
+                  continue;
+               String name = reader.getLocalName();
+               if (depth == 2 && name.equals("servlet-mapping"))
+               {
+                  inServletMapping = true;
+                  urlPattern = null;
+               }
+               else if (depth == 3 && inServletMapping && name.equals("url-pattern"))
+               {
+                  urlPattern = reader.getElementText();
+                  depth--;
+               }
+            }
+            else if (event == XMLStreamConstants.END_ELEMENT)
+            {
+               if (depth == 2 && inServletMapping)
+               {
+                  urlPatterns.add(urlPattern);
+                  inServletMapping = false;
+               }
+               depth--;
+            }
+         }
+      }
+      finally
+      {
+         reader.close();
+      }
+      return urlPatterns;
+   }
+
+   /*
+    * Advances to the root element and returns its namespace, or null if the root element has another name
+    */
+   private static String readRootNamespace(XMLStreamReader reader, String rootElement) throws XMLStreamException
+   {
+      while (reader.hasNext())
+      {
+         if (reader.next() == XMLStreamConstants.START_ELEMENT)
+         {
+            return rootElement.equals(reader.getLocalName()) ? namespaceOf(reader) : null;
+         }
+      }
+      return null;
+   }
+
+   private static String namespaceOf(XMLStreamReader reader)
+   {
+      String namespace = reader.getNamespaceURI();
+      return namespace == null ? "" : namespace;
+   }
+
+   private static XMLInputFactory createInputFactory()
+   {
+      XMLInputFactory factory = XMLInputFactory.newInstance();
+      factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, Boolean.TRUE);
+      // DTD based descriptors must not trigger any network access
+      factory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+      factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+      return factory;
+   }
+}
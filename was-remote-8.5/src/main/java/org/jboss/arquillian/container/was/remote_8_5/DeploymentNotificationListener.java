@@ -17,38 +17,37 @@
 package org.jboss.arquillian.container.was.remote_8_5;
 
 import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import javax.management.Notification;
-import javax.management.NotificationFilterSupport;
 import javax.management.NotificationListener;
-import javax.management.ObjectName;
 
-import com.ibm.websphere.management.AdminClient;
 import com.ibm.websphere.management.application.AppNotification;
 
+/**
+ * Waits for the completion of a single AppManagement task. The listener registers itself
+ * on creation, before the task is started, and remembers its completion, so a task that
+ * completes before {@link #await(long, TimeUnit)} is called is not missed.
+ */
 public class DeploymentNotificationListener implements NotificationListener
 {
    private static Logger log = Logger.getLogger(DeploymentNotificationListener.class.getName());
-   private AdminClient adminClient;
-   private NotificationFilterSupport filterSupport;
-   private ObjectName objectName;
+   private AppManagementNotificationDispatcher dispatcher;
    private String eventTypeToCheck;
-   private boolean successful = true;
-   private String message = "";
-   private Properties notificationProps = new Properties();
+   private CountDownLatch completed = new CountDownLatch(1);
+   private volatile boolean successful = true;
+   private volatile String message = "";
+   private volatile Properties notificationProps = new Properties();
 
-   public DeploymentNotificationListener(AdminClient adminClient, NotificationFilterSupport support, Object handBack, String eventTypeToCheck) 
-      throws Exception
+   public DeploymentNotificationListener(AppManagementNotificationDispatcher dispatcher, String appName, String eventTypeToCheck) 
    {
       super();
-      this.adminClient = adminClient;
-      this.filterSupport = support;
+      this.dispatcher = dispatcher;
       this.eventTypeToCheck = eventTypeToCheck;
-      this.objectName = (ObjectName) adminClient.queryNames(new ObjectName("WebSphere:type=AppManagement,*"), null)
-            .iterator().next();
-      adminClient.addNotificationListener(objectName, this, filterSupport, handBack);
+      dispatcher.register(eventTypeToCheck, appName, this);
    }
 
    public void handleNotification(Notification notification, Object handback)
@@ -60,33 +59,40 @@ public class DeploymentNotificationListener implements NotificationListener
          log.finest("handleNotification taskStatus: " + appNotification.taskStatus);
          log.finest("handleNotification eventProps: " + appNotification.props);
       }
-      message = message += "\n" + appNotification.message;
+      message = message + "\n" + appNotification.message;
       if (
             appNotification.taskName.equals(eventTypeToCheck) && 
             (appNotification.taskStatus.equals(AppNotification.STATUS_COMPLETED) || 
                   appNotification.taskStatus.equals(AppNotification.STATUS_FAILED)))
       {
-         try
-         {
-            adminClient.removeNotificationListener(objectName, this);
-            if (appNotification.taskStatus.equals(AppNotification.STATUS_FAILED))
-            {
-               successful = false;
-            } else {
-               notificationProps = appNotification.props;
-            }
-               
-            synchronized (this)
-            {
-               notifyAll();
-            }
-         }
-         catch (Exception e)
+         dispatcher.unregister(this);
+         if (appNotification.taskStatus.equals(AppNotification.STATUS_FAILED))
          {
+            successful = false;
+         } else {
+            notificationProps = appNotification.props;
          }
+            
+         completed.countDown();
       }
    }
 
+   /**
+    * Waits until the task has completed or failed.
+    *
+    * @return false if the task did not complete within the timeout, in which case
+    *         the listener no longer receives notifications
+    */
+   public boolean await(long timeout, TimeUnit unit) throws InterruptedException
+   {
+      if (completed.await(timeout, unit))
+         return true;
+
+      dispatcher.unregister(this);
+      // The task may have completed while the listener was being unregistered
+      return completed.getCount() == 0;
+   }
+
    public String getMessage()
    {
       return message;
@@ -0,0 +1,158 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2010-2011, Red Hat Middleware LLC, and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.arquillian.container.was.remote_8_5;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Wall clock time spent in the phases of a single deploy or undeploy operation.
+ *
+ * The container fires an instance as an Arquillian event once the operation has
+ * finished, successfully or not, and appends it to the {@link DeploymentTimingReport}.
+ * Phases are listed in the order they were entered; a phase that is entered more
+ * than once accumulates its time.
+ */
+public class DeploymentPhaseTimings
+{
+   public static final String DEPLOY = "deploy";
+   public static final String UNDEPLOY = "undeploy";
+
+   public static final String CONTENT_CHECK = "contentCheck";
+   public static final String PREPARED_ARCHIVE_LOOKUP = "preparedArchiveLookup";
+   public static final String EXPORT = "export";
+   public static final String READ_ARCHIVE = "readArchive";
+   public static final String VALIDATE = "validate";
+   public static final String SAVE_AND_CLOSE = "saveAndClose";
+   public static final String EXPLODE = "explode";
+   public static final String INSTALL_APPLICATION = "installApplication";
+   public static final String UPDATE_APPLICATION = "updateApplication";
+   public static final String STORE_DIGEST = "storeDigest";
+   public static final String DISTRIBUTION = "distribution";
+   public static final String START_APPLICATION = "startApplication";
+   public static final String METADATA_DISCOVERY = "metadataDiscovery";
+   public static final String UNINSTALL_APPLICATION = "uninstallApplication";
+   public static final String SAVE_CONFIGURATION = "saveConfiguration";
+
+   private String operation;
+   private String applicationName;
+   private long startTime;
+   private long startNanos;
+   private long totalNanos = -1;
+   private boolean successful;
+
+   private Map<String, Long> phaseNanos = new LinkedHashMap<String, Long>();
+   private String currentPhase;
+   private long currentPhaseStart;
+
+   public DeploymentPhaseTimings(String operation, String applicationName)
+   {
+      this.operation = operation;
+      this.applicationName = applicationName;
+      this.startTime = System.currentTimeMillis();
+      this.startNanos = System.nanoTime();
+   }
+
+   /**
+    * Ends the current phase, if any, and starts timing the given one.
+    */
+   public synchronized void begin(String phase)
+   {
+      end();
+      currentPhase = phase;
+      currentPhaseStart = System.nanoTime();
+   }
+
+   /**
+    * Ends the current phase.
+    */
+   public synchronized void end()
+   {
+      if (currentPhase == null)
+         return;
+
+      long elapsed = System.nanoTime() - currentPhaseStart;
+      Long previous = phaseNanos.get(currentPhase);
+      phaseNanos.put(currentPhase, previous == null ? elapsed : previous + elapsed);
+      currentPhase = null;
+   }
+
+   /**
+    * Ends the current phase and the operation as a whole.
+    */
+   public synchronized void finish(boolean successful)
+   {
+      end();
+      this.totalNanos = System.nanoTime() - startNanos;
+      this.successful = successful;
+   }
+
+   /**
+    * @return either {@link #DEPLOY} or {@link #UNDEPLOY}
+    */
+   public String getOperation()
+   {
+      return operation;
+   }
+
+   public String getApplicationName()
+   {
+      return applicationName;
+   }
+
+   /**
+    * @return the time the operation started, in milliseconds since the epoch
+    */
+   public long getStartTime()
+   {
+      return startTime;
+   }
+
+   /**
+    * @return the duration of the whole operation in milliseconds, or -1 if it has not finished
+    */
+   public synchronized long getTotalMillis()
+   {
+      return totalNanos < 0 ? -1 : totalNanos / 1000000;
+   }
+
+   public synchronized boolean isSuccessful()
+   {
+      return successful;
+   }
+
+   /**
+    * @return the duration of every completed phase in milliseconds, in the order the phases were entered
+    */
+   public synchronized Map<String, Long> getPhases()
+   {
+      Map<String, Long> phases = new LinkedHashMap<String, Long>();
+      for (Map.Entry<String, Long> phase : phaseNanos.entrySet())
+      {
+         phases.put(phase.getKey(), phase.getValue() / 1000000);
+      }
+      return Collections.unmodifiableMap(phases);
+   }
+
+   @Override
+   public String toString()
+   {
+      return operation + " of " + applicationName + " took " + getTotalMillis() + "ms "
+            + (isSuccessful() ? "" : "(failed) ") + getPhases();
+   }
+}
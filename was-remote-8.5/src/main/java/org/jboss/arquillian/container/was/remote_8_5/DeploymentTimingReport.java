@@ -0,0 +1,158 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2010-2011, Red Hat Middleware LLC, and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.arquillian.container.was.remote_8_5;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * JSON report of the {@link DeploymentPhaseTimings} of a test run.
+ *
+ * Every JVM writes one file per report directory, named after the time the run
+ * started and the process, so concurrent test forks do not overwrite each other.
+ * The file is rewritten after every operation and therefore stays complete even
+ * if the run is aborted.
+ */
+public class DeploymentTimingReport
+{
+   private static Logger log = Logger.getLogger(DeploymentTimingReport.class.getName());
+
+   private static final String RUN_STARTED = timestamp(System.currentTimeMillis());
+
+   private static final String FILE_NAME = "arquillian-was-deployment-timings-"
+         + RUN_STARTED.replaceAll("[^0-9]", "").substring(0, 14) + "-" + processId() + ".json";
+
+   private static final Map<File, List<String>> reports = new HashMap<File, List<String>>();
+
+   private DeploymentTimingReport()
+   {
+   }
+
+   /**
+    * Adds the timings to the report of this run in the given directory. Failures to write
+    * the report are logged and otherwise ignored.
+    */
+   public static synchronized void append(File directory, DeploymentPhaseTimings timings)
+   {
+      File reportFile = new File(directory, FILE_NAME);
+      List<String> operations = reports.get(reportFile);
+      if (operations == null)
+      {
+         operations = new ArrayList<String>();
+         reports.put(reportFile, operations);
+      }
+      operations.add(toJson(timings));
+
+      try
+      {
+         write(reportFile, operations);
+      }
+      catch (IOException e)
+      {
+         log.log(Level.WARNING, "Unable to write deployment timing report " + reportFile, e);
+      }
+   }
+
+   private static void write(File reportFile, List<String> operations) throws IOException
+   {
+      File directory = reportFile.getParentFile();
+      if (directory != null && !directory.isDirectory() && !directory.mkdirs())
+         throw new IOException("Unable to create directory " + directory);
+
+      Writer writer = new OutputStreamWriter(new FileOutputStream(reportFile), "UTF-8");
+      try
+      {
+         writer.write("{\n  \"runStarted\": " + quote(RUN_STARTED) + ",\n  \"operations\": [");
+         for (int i = 0; i < operations.size(); i++)
+         {
+            writer.write(i == 0 ? "\n    " : ",\n    ");
+            writer.write(operations.get(i));
+         }
+         writer.write("\n  ]\n}\n");
+      }
+      finally
+      {
+         writer.close();
+      }
+   }
+
+   private static String toJson(DeploymentPhaseTimings timings)
+   {
+      StringBuilder json = new StringBuilder();
+      json.append("{\"operation\": ").append(quote(timings.getOperation()))
+         .append(", \"application\": ").append(quote(timings.getApplicationName()))
+         .append(", \"started\": ").append(quote(timestamp(timings.getStartTime())))
+         .append(", \"successful\": ").append(timings.isSuccessful())
+         .append(", \"totalMillis\": ").append(timings.getTotalMillis())
+         .append(", \"phases\": {");
+      boolean first = true;
+      for (Map.Entry<String, Long> phase : timings.getPhases().entrySet())
+      {
+         json.append(first ? "" : ", ").append(quote(phase.getKey())).append(": ").append(phase.getValue());
+         first = false;
+      }
+      return json.append("}}").toString();
+   }
+
+   private static String quote(String value)
+   {
+      if (value == null)
+         return "null";
+
+      StringBuilder quoted = new StringBuilder("\"");
+      for (char c : value.toCharArray())
+      {
+         if (c == '"' || c == '\\')
+            quoted.append('\\').append(c);
+         else if (c < 0x20)
+            quoted.append(String.format("\\u%04x", (int) c));
+         else
+            quoted.append(c);
+      }
+      return quoted.append('"').toString();
+   }
+
+   private static String timestamp(long time)
+   {
+      SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'");
+      format.setTimeZone(TimeZone.getTimeZone("UTC"));
+      return format.format(new Date(time));
+   }
+
+   /*
+    * The runtime name is pid@host on the common JVMs
+    */
+   private static String processId()
+   {
+      String name = ManagementFactory.getRuntimeMXBean().getName();
+      int at = name.indexOf('@');
+      return (at > 0 ? name.substring(0, at) : name).replaceAll("[^A-Za-z0-9]", "");
+   }
+}
@@ -0,0 +1,172 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2010-2011, Red Hat Middleware LLC, and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.arquillian.container.was.remote_8_5;
+
+import java.util.Hashtable;
+import java.util.logging.Logger;
+
+import javax.management.MalformedObjectNameException;
+import javax.management.Notification;
+import javax.management.NotificationListener;
+import javax.management.ObjectName;
+
+import com.ibm.websphere.management.application.AppManagement;
+import com.ibm.websphere.management.application.AppNotification;
+
+/**
+ * Waits for an installed application to be distributed to all nodes.
+ *
+ * The tracker stays registered with the {@link AppManagementNotificationDispatcher}
+ * for the whole wait and completes as soon as a
+ * {@link AppNotification#DISTRIBUTION_STATUS_NODE} notification reports the
+ * application as distributed. Status requests are issued at an interval that
+ * starts small and doubles after every request that did not end the wait, up to
+ * {@link #MAX_POLL_INTERVAL}.
+ */
+public class DistributionStatusTracker implements NotificationListener
+{
+   private static Logger log = Logger.getLogger(DistributionStatusTracker.class.getName());
+
+   static final long INITIAL_POLL_INTERVAL = 50;
+   static final long MAX_POLL_INTERVAL = 1000;
+
+   private AppManagementNotificationDispatcher dispatcher;
+   private AppManagement appManagementProxy;
+   private String appName;
+
+   private String distributionState = AppNotification.DISTRIBUTION_UNKNOWN;
+   private Exception failure;
+
+   public DistributionStatusTracker(AppManagementNotificationDispatcher dispatcher, AppManagement appManagementProxy,
+         String appName)
+   {
+      this.dispatcher = dispatcher;
+      this.appManagementProxy = appManagementProxy;
+      this.appName = appName;
+      dispatcher.register(AppNotification.DISTRIBUTION_STATUS_NODE, appName, this);
+   }
+
+   /**
+    * Blocks until the application is reported as distributed to all nodes or the timeout elapses.
+    *
+    * @param timeout the maximum time to wait in milliseconds
+    * @return true if the distribution completed, false if the timeout elapsed first
+    */
+   public boolean awaitDistribution(long timeout) throws Exception
+   {
+      long deadline = System.currentTimeMillis() + timeout;
+      long pollInterval = INITIAL_POLL_INTERVAL;
+
+      requestDistributionStatus();
+      while (true)
+      {
+         synchronized (this)
+         {
+            long now = System.currentTimeMillis();
+            long intervalEnd = Math.min(now + pollInterval, deadline);
+            while (!AppNotification.DISTRIBUTION_DONE.equals(distributionState) && failure == null
+                  && now < intervalEnd)
+            {
+               wait(intervalEnd - now);
+               now = System.currentTimeMillis();
+            }
+
+            if (failure != null)
+               throw failure;
+            if (AppNotification.DISTRIBUTION_DONE.equals(distributionState))
+               return true;
+            if (now >= deadline)
+               return false;
+
+            // Every status request is answered by a notification, so back off
+            // whether or not one arrived
+            pollInterval = Math.min(pollInterval * 2, MAX_POLL_INTERVAL);
+         }
+         requestDistributionStatus();
+      }
+   }
+
+   /**
+    * Stops receiving distribution notifications.
+    */
+   public void close()
+   {
+      dispatcher.unregister(this);
+   }
+
+   public void handleNotification(Notification notification, Object handback)
+   {
+      AppNotification appNotification = (AppNotification) notification.getUserData();
+      if (!AppNotification.STATUS_COMPLETED.equals(appNotification.taskStatus))
+         return;
+
+      synchronized (this)
+      {
+         try
+         {
+            distributionState = checkDistributionStatus(appNotification.props == null ? null
+                  : appNotification.props.getProperty(AppNotification.DISTRIBUTION_STATUS_COMPOSITE));
+         }
+         catch (Exception e)
+         {
+            failure = e;
+         }
+         notifyAll();
+      }
+   }
+
+   private void requestDistributionStatus() throws Exception
+   {
+      appManagementProxy.getDistributionStatus(appName, new Hashtable<Object, Object>(), null);
+   }
+
+   /*
+    * Figures out the aggregate distribution status of all nodes from a composite status
+    */
+   static String checkDistributionStatus(String compositeStatus) throws MalformedObjectNameException, NullPointerException, IllegalStateException {
+      String distributionState = AppNotification.DISTRIBUTION_UNKNOWN;
+      if (compositeStatus != null)
+      {
+         log.finer("compositeStatus: " + compositeStatus);
+         String[] serverStati = compositeStatus.split("\\+");
+         int countTrue = 0, countFalse = 0, countUnknown = 0;
+         for (String serverStatus : serverStati)
+         {
+            ObjectName objectName = new ObjectName(serverStatus);
+            distributionState = objectName.getKeyProperty("distribution");
+            log.finer("distributionState: " + distributionState);
+            if (distributionState.equals("true"))
+               countTrue++;
+            if (distributionState.equals("false"))
+               countFalse++;
+            if (distributionState.equals("unknown"))
+               countUnknown++;
+         }
+         if (countUnknown > 0)
+         {
+            distributionState = AppNotification.DISTRIBUTION_UNKNOWN;
+         } else if (countFalse > 0) {
+            distributionState = AppNotification.DISTRIBUTION_NOT_DONE;
+         } else if (countTrue > 0) {
+            distributionState = AppNotification.DISTRIBUTION_DONE;
+         } else {
+            throw new IllegalStateException("Reported distribution status is invalid.");
+         }
+      }
+      return distributionState;
+   }
+}
@@ -17,26 +17,36 @@
 package org.jboss.arquillian.container.was.remote_8_5;
 
 import java.io.File;
-import java.io.StringReader;
+import java.io.IOException;
 import java.lang.IllegalStateException;
+import java.security.MessageDigest;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.Hashtable;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.Properties;
+import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import javax.management.Attribute;
 import javax.management.AttributeList;
 import javax.management.InstanceNotFoundException;
-import javax.management.MalformedObjectNameException;
-import javax.management.NotificationFilterSupport;
 import javax.management.ObjectName;
-import javax.xml.xpath.XPath;
-import javax.xml.xpath.XPathConstants;
-import javax.xml.xpath.XPathFactory;
 
 import org.jboss.arquillian.container.spi.client.container.DeployableContainer;
 import org.jboss.arquillian.container.spi.client.container.DeploymentException;
@@ -45,6 +55,8 @@ import org.jboss.arquillian.container.spi.client.protocol.ProtocolDescription;
 import org.jboss.arquillian.container.spi.client.protocol.metadata.HTTPContext;
 import org.jboss.arquillian.container.spi.client.protocol.metadata.ProtocolMetaData;
 import org.jboss.arquillian.container.spi.client.protocol.metadata.Servlet;
+import org.jboss.arquillian.core.api.Event;
+import org.jboss.arquillian.core.api.annotation.Inject;
 import org.jboss.shrinkwrap.api.Archive;
 import org.jboss.shrinkwrap.api.ShrinkWrap;
 import org.jboss.shrinkwrap.api.asset.StringAsset;
@@ -55,12 +67,9 @@ import org.jboss.shrinkwrap.api.spec.JavaArchive;
 import org.jboss.shrinkwrap.descriptor.api.Descriptor;
 import org.jboss.shrinkwrap.descriptor.api.Descriptors;
 import org.jboss.shrinkwrap.descriptor.api.application6.ApplicationDescriptor;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
-import org.xml.sax.InputSource;
 
 import com.ibm.websphere.management.AdminClient;
-import com.ibm.websphere.management.AdminClientFactory;
+import com.ibm.websphere.management.Session;
 import com.ibm.websphere.management.application.AppConstants;
 import com.ibm.websphere.management.application.AppManagement;
 import com.ibm.websphere.management.application.AppManagementProxy;
@@ -87,11 +96,49 @@ public class WebSphereRemoteContainer implements DeployableContainer<WebSphereRe
    private static final String className = WebSphereRemoteContainer.class.getName();
    
    private static Logger log = Logger.getLogger(className);
+
+   /** Virtual host the web modules of an application are bound to. */
+   private static final String DEFAULT_VIRTUAL_HOST = "default_host";
+
+   /** Name of the application custom property holding the digest of the installed content. */
+   private static final String DEPLOYMENT_DIGEST_PROPERTY = "arquillian.deployment.digest";
    
    private WebSphereRemoteContainerConfiguration containerConfiguration;
 
    private AdminClient adminClient;
 
+   /** Connection opened in the background since setup, null once start has taken it over. */
+   private FutureTask<AdminClient> pendingConnection;
+
+   private AppManagement appManagementProxy;
+
+   private AppManagementNotificationDispatcher notificationDispatcher;
+
+   /** HTTP endpoint of the target server and the connection it was discovered with. */
+   private String remoteServerHttpAddress;
+   private int remoteServerHttpPort;
+   private AdminClient endpointDiscoveryClient;
+
+   /** Application view of the archives deployed by this container, used to compute deltas. */
+   private Map<String, ArchiveManifest> deployedManifests = new HashMap<String, ArchiveManifest>();
+
+   @Inject
+   private Event<DeploymentPhaseTimings> deploymentPhaseTimings;
+
+   /** Worker for asynchronous undeployments, the uninstalls it has not finished yet and their timings. */
+   private ExecutorService undeployExecutor;
+   private Map<String, Future<Void>> pendingUndeployments = new ConcurrentHashMap<String, Future<Void>>();
+   private Queue<DeploymentPhaseTimings> backgroundTimings = new ConcurrentLinkedQueue<DeploymentPhaseTimings>();
+
+   /** Applications undeployed while teardown is deferred, uninstalled together when the container stops. */
+   private Set<String> deferredUndeployments = new LinkedHashSet<String>();
+
+   /** Content of the expanded applications in the staging directory, used to write only changed entries. */
+   private Map<String, ArchiveManifest> explodedManifests = new HashMap<String, ArchiveManifest>();
+
+   /** Archives already prepared by AppDeploymentController, null if the cache is disabled. */
+   private PreparedArchiveCache preparedArchiveCache;
+
    //-------------------------------------------------------------------------------------||
    // Required Implementations - DeployableContainer -------------------------------------||
    //-------------------------------------------------------------------------------------||
@@ -106,6 +153,18 @@ public class WebSphereRemoteContainer implements DeployableContainer<WebSphereRe
       }
 	   
       this.containerConfiguration = configuration;
+      
+      if (configuration.isEagerConnectionEnabled())
+      {
+         connectInBackground();
+      }
+      
+      String preparedArchiveCacheDirectory = configuration.getPreparedArchiveCacheDirectory();
+      if (preparedArchiveCacheDirectory != null && preparedArchiveCacheDirectory.length() > 0)
+      {
+         this.preparedArchiveCache = new PreparedArchiveCache(new File(preparedArchiveCacheDirectory),
+               configuration.getPreparedArchiveCacheMaxSize() * 1024L * 1024L);
+      }
 	   
       if (log.isLoggable(Level.FINER)) {
          log.exiting(className, "setup");
@@ -121,42 +180,12 @@ public class WebSphereRemoteContainer implements DeployableContainer<WebSphereRe
          log.entering(className, "start");
       }
       
-      Properties wasServerProps = new Properties();
-      wasServerProps.setProperty(AdminClient.CONNECTOR_HOST, containerConfiguration.getRemoteServerAddress());
-      wasServerProps.setProperty(AdminClient.CONNECTOR_PORT, String.valueOf(containerConfiguration.getRemoteServerSoapPort()));
-      wasServerProps.setProperty(AdminClient.CONNECTOR_TYPE, AdminClient.CONNECTOR_TYPE_SOAP);
-      wasServerProps.setProperty(AdminClient.USERNAME, containerConfiguration.getUsername());
-      
-      if (containerConfiguration.getSecurityEnabled())
-      {
-         wasServerProps.setProperty(AdminClient.CONNECTOR_SECURITY_ENABLED, "true");
-         wasServerProps.setProperty(AdminClient.PASSWORD, containerConfiguration.getPassword());
-         wasServerProps.setProperty(AdminClient.CACHE_DISABLED, "false"); 
-         wasServerProps.setProperty("javax.net.ssl.trustStore", containerConfiguration.getSslTrustStore());
-         wasServerProps.setProperty("javax.net.ssl.keyStore", containerConfiguration.getSslKeyStore());
-         wasServerProps.setProperty("javax.net.ssl.trustStorePassword", containerConfiguration.getSslTrustStorePassword());
-         wasServerProps.setProperty("javax.net.ssl.keyStorePassword", containerConfiguration.getSslKeyStorePassword());
-         if (containerConfiguration.getSslTrustStoreType() != null)
-            wasServerProps.setProperty("javax.net.ssl.trustStoreType", containerConfiguration.getSslTrustStoreType());
-         if (containerConfiguration.getSslKeyStoreType() != null)
-            wasServerProps.setProperty("javax.net.ssl.keyStoreType", containerConfiguration.getSslKeyStoreType());
-      } else {
-         wasServerProps.setProperty(AdminClient.CONNECTOR_SECURITY_ENABLED, "false");
-      }
-      
       try
       {
-         adminClient = AdminClientFactory.createAdminClient(wasServerProps);
-         
-         ObjectName serverMBean = adminClient.getServerMBean();
-         String processType = serverMBean.getKeyProperty("processType");
-         
-         log.fine("CanonicalKeyPropertyListString: " + serverMBean.getCanonicalKeyPropertyListString());
+         adminClient = pendingConnection != null ? awaitConnection() : connect(createConnectorProperties());
          
-         if (processType.equals("DeploymentManager")
-               || processType.equals("NodeAgent")
-               || processType.equals("ManagedProcess"))
-            throw new IllegalStateException("Connecting to a " + processType + " is not supported.");
+         appManagementProxy = AppManagementProxy.getJMXProxyForClient(adminClient);
+         notificationDispatcher = new AppManagementNotificationDispatcher(adminClient);
       } 
       catch (Exception e) 
       {
@@ -179,25 +208,29 @@ public class WebSphereRemoteContainer implements DeployableContainer<WebSphereRe
          log.finer("Archive provided to deploy method: " + archive.toString(true));
       }
       
-      File exportedArchiveLocation = null;
       ProtocolMetaData metaData = null;
-      EnterpriseArchive deploymentArchive = null;
+      Archive<?> deploymentArchive = null;
       
-      // Create an EAR file from the provided Archive that can be processed by AppDeploymentController
-      if (WebArchive.class.isInstance(archive)) {
+      if (WebArchive.class.isInstance(archive) && containerConfiguration.isDirectWarDeploymentEnabled()) {
+         // WebSphere wraps a standalone web module into an application itself
+         log.fine("Deploying provided WebArchive " + archive.getName() + " as a standalone web module.");
+         deploymentArchive = archive;
+      } else if (WebArchive.class.isInstance(archive)) {
+         // Create an EAR file from the provided Archive that can be processed by AppDeploymentController
          // Packaging a single WAR file into an EAR
          String earName = archive.getName().substring(0, archive.getName().lastIndexOf("."));
          log.fine("Creating an EnterpriseArchive " + earName + ".ear from provided WebArchive " + archive.getName() + ".");
 
          // Create ShrinkWrap EnterpriseArchive and add the WAR file as a module
-         deploymentArchive = ShrinkWrap.create(EnterpriseArchive.class, earName + ".ear")
+         EnterpriseArchive enterpriseArchive = ShrinkWrap.create(EnterpriseArchive.class, earName + ".ear")
             .addAsModule(archive);
 
          // Generate the application.xml DD and add it to the EAR
          ApplicationDescriptor appDescriptor = Descriptors.create(ApplicationDescriptor.class);
          appDescriptor.createModule().getOrCreateWeb().webUri(archive.getName()).contextRoot(earName);
-         deploymentArchive.setApplicationXML(
+         enterpriseArchive.setApplicationXML(
                new StringAsset(appDescriptor.exportAsString()));
+         deploymentArchive = enterpriseArchive;
       } else if (EnterpriseArchive.class.isInstance(archive)){
          // Use the provided EnterpriseArchive as-is
          deploymentArchive = (EnterpriseArchive) archive;
@@ -206,13 +239,112 @@ public class WebSphereRemoteContainer implements DeployableContainer<WebSphereRe
       }
 
       String appName = createDeploymentName(deploymentArchive.getName());
-      String appExtension = createDeploymentExtension(deploymentArchive.getName());
+      
+      // An application with the same name may still be uninstalled in the background
+      awaitPendingUndeployment(appName);
+      fireBackgroundTimings();
+      
+      DeploymentPhaseTimings timings = new DeploymentPhaseTimings(DeploymentPhaseTimings.DEPLOY, appName);
+      boolean successful = false;
       
       try
       {
-         exportedArchiveLocation = File.createTempFile(appName, appExtension);
-         deploymentArchive.as(ZipExporter.class).exportTo(exportedArchiveLocation, true);
+         ObjectName serverMBean = adminClient.getServerMBean();
+         
+         if (deferredUndeployments.remove(appName))
+         {
+            uninstallApplication(appName, null, timings);
+         }
+         
+         ArchiveManifest manifest = null;
+         String deploymentDigest = null;
+         boolean installed = false;
+         if (isRetainingApplications())
+         {
+            timings.begin(DeploymentPhaseTimings.CONTENT_CHECK);
+            manifest = ArchiveManifest.ofApplication(deploymentArchive);
+            if (containerConfiguration.isDeploymentCacheEnabled())
+               deploymentDigest = createDeploymentDigest(deploymentArchive, manifest);
+            
+            if (appManagementProxy.checkIfAppExists(appName, new Hashtable<Object, Object>(), null))
+            {
+               ArchiveManifest deployedManifest = deployedManifests.get(appName);
+               if (deploymentDigest != null && deploymentDigest.equals(ApplicationCustomProperties.get(
+                     new ConfigServiceProxy(adminClient), null, appName, DEPLOYMENT_DIGEST_PROPERTY)))
+               {
+                  log.info("Application " + appName + " is already installed with identical content, skipping installation");
+                  startApplicationIfStopped(appName, timings);
+                  installed = true;
+               }
+               else if (isExploded(deploymentArchive) && deployedManifest != null
+                     && PartialApplication.isUpdatable(manifest, deployedManifest))
+               {
+                  refreshExplodedApplication(deploymentArchive, appName, manifest, deployedManifest, deploymentDigest, timings);
+                  installed = true;
+               }
+               else if (containerConfiguration.isDeltaDeploymentEnabled() && deployedManifest != null
+                     && EnterpriseArchive.class.isInstance(deploymentArchive)
+                     && PartialApplication.isUpdatable(manifest, deployedManifest))
+               {
+                  updateApplication(deploymentArchive, appName, manifest, deployedManifest, deploymentDigest, timings);
+                  installed = true;
+               }
+               else
+               {
+                  log.info("Replacing installed application " + appName + " as its content has changed");
+                  deployedManifests.remove(appName);
+                  uninstallApplication(appName, null, timings);
+               }
+            }
+         }
+         
+         if (!installed)
+         {
+            installApplication(serverMBean, deploymentArchive, appName, manifest, deploymentDigest, timings);
+         }
+         
+         if (manifest != null)
+         {
+            deployedManifests.put(appName, manifest);
+         }
          
+         timings.begin(DeploymentPhaseTimings.METADATA_DISCOVERY);
+         metaData = discoverProtocolMetaDataFromConfiguration(adminClient, 
+               serverMBean.getKeyProperty("node"),
+               serverMBean.getKeyProperty("process"),
+               appName);
+         successful = true;
+      } 
+      catch (Exception e) 
+      {
+         // The installed state is unknown, the next deployment has to reinstall
+         deployedManifests.remove(appName);
+         throw new DeploymentException("Could not deploy application", e);
+      }
+      finally
+      {
+         publishTimings(timings, successful);
+      }
+      
+      if (log.isLoggable(Level.FINER)) {
+         log.exiting(className, "deploy");
+      }
+      
+      return metaData;
+   }
+   
+   /*
+    * Exports, prepares, installs, distributes and starts the application
+    */
+   private void installApplication(ObjectName serverMBean, Archive<?> deploymentArchive, String appName,
+         ArchiveManifest manifest, String deploymentDigest, DeploymentPhaseTimings timings) throws Exception
+   {
+      File exportedArchiveLocation = null;
+      String appExtension = createDeploymentExtension(deploymentArchive.getName());
+      boolean standaloneWebModule = WebArchive.class.isInstance(deploymentArchive);
+      
+      try
+      {
          Hashtable<Object, Object> prefs = new Hashtable<Object, Object>();
          
          prefs.put(AppConstants.APPDEPL_LOCALE, Locale.getDefault());
@@ -226,27 +358,92 @@ public class WebSphereRemoteContainer implements DeployableContainer<WebSphereRe
 
          Properties props = new Properties();
          prefs.put (AppConstants.APPDEPL_DFLTBNDG, props);
-         props.put (AppConstants.APPDEPL_DFLTBNDG_VHOST, "default_host");
-
-         // Prepare application for deployment to WebSphere Application Server
-         AppDeploymentController controller = AppDeploymentController
-         	.readArchive(exportedArchiveLocation.getAbsolutePath(), prefs);
+         props.put (AppConstants.APPDEPL_DFLTBNDG_VHOST, DEFAULT_VIRTUAL_HOST);
+         
+         if (standaloneWebModule)
+         {
+            prefs.put(AppConstants.APPDEPL_WEB_CONTEXTROOT, appName);
+         }
 
-         String[] validationResult = controller.validate();
-         if (validationResult != null && validationResult.length > 0) {
-            throw new DeploymentException("Unable to complete all task data for deployment preparation. Reason: " + Arrays.toString(validationResult));
+         File preparedArchive = null;
+         String preparedArchiveKey = null;
+         if (preparedArchiveCache != null && !standaloneWebModule)
+         {
+            timings.begin(DeploymentPhaseTimings.PREPARED_ARCHIVE_LOOKUP);
+            preparedArchiveKey = createPreparedArchiveKey(deploymentArchive);
+            preparedArchive = preparedArchiveCache.get(preparedArchiveKey, appExtension);
+            if (preparedArchive != null)
+               log.fine("Using prepared archive " + preparedArchive + " from the cache");
+         }
+         
+         if (preparedArchive != null && isStaging())
+         {
+            // The server can only read archives in the staging directory
+            timings.begin(DeploymentPhaseTimings.EXPORT);
+            exportedArchiveLocation = File.createTempFile(appName, appExtension, getStagingDirectory());
+            PreparedArchiveCache.copy(preparedArchive, exportedArchiveLocation);
+            preparedArchive = exportedArchiveLocation;
          }
          
-         controller.saveAndClose();
+         boolean exported = false;
+         if (preparedArchive == null)
+         {
+            timings.begin(DeploymentPhaseTimings.EXPORT);
+            exportedArchiveLocation = File.createTempFile(appName, appExtension, getStagingDirectory());
+            deploymentArchive.as(ZipExporter.class).exportTo(exportedArchiveLocation, true);
+            preparedArchive = exportedArchiveLocation;
+            exported = true;
+         }
+         
+         // A standalone web module is installed as exported, with the bindings applied by installApplication
+         if (exported && !standaloneWebModule)
+         {
+            // Prepare application for deployment to WebSphere Application Server
+            timings.begin(DeploymentPhaseTimings.READ_ARCHIVE);
+            AppDeploymentController controller = AppDeploymentController
+            	.readArchive(exportedArchiveLocation.getAbsolutePath(), prefs);
+
+            timings.begin(DeploymentPhaseTimings.VALIDATE);
+            String[] validationResult = controller.validate();
+            if (validationResult != null && validationResult.length > 0) {
+               throw new DeploymentException("Unable to complete all task data for deployment preparation. Reason: " + Arrays.toString(validationResult));
+            }
+            
+            timings.begin(DeploymentPhaseTimings.SAVE_AND_CLOSE);
+            controller.saveAndClose();
+            timings.end();
+            
+            if (log.isLoggable(Level.FINER)) {
+               // Log the contents of the saved archive from AppDeploymentController
+               Archive<JavaArchive> savedArchive = ShrinkWrap.createFromZipFile(JavaArchive.class, exportedArchiveLocation);
+               log.finer("Archive prepared for deployment: " + savedArchive.toString(true));            
+            }
+            
+            if (preparedArchiveCache != null)
+            {
+               try
+               {
+                  preparedArchiveCache.put(preparedArchiveKey, appExtension, exportedArchiveLocation);
+               }
+               catch (IOException e)
+               {
+                  log.log(Level.WARNING, "Unable to cache prepared archive of application " + appName, e);
+               }
+            }
+         }
          
-         if (log.isLoggable(Level.FINER)) {
-            // Log the contents of the saved archive from AppDeploymentController
-            Archive<JavaArchive> savedArchive = ShrinkWrap.createFromZipFile(JavaArchive.class, exportedArchiveLocation);
-            log.finer("Archive prepared for deployment: " + savedArchive.toString(true));            
+         if (isExploded(deploymentArchive))
+         {
+            // The archive only provides the configuration, the server runs the expanded application
+            timings.begin(DeploymentPhaseTimings.EXPLODE);
+            syncExplodedApplication(deploymentArchive, appName,
+                  manifest != null ? manifest : ArchiveManifest.ofApplication(deploymentArchive));
+            timings.end();
+            prefs.put(AppConstants.APPDEPL_INSTALL_DIR, getServerPath(getExplodedDirectory()));
+            prefs.put(AppConstants.APPDEPL_DISTRIBUTE_APP, Boolean.FALSE);
          }
          
          Hashtable<Object, Object> module2Server = new Hashtable<Object, Object>();
-         ObjectName serverMBean = adminClient.getServerMBean();
          
          String targetServer = "WebSphere:cell=" + serverMBean.getKeyProperty("cell")
                               + ",node=" + serverMBean.getKeyProperty("node")
@@ -257,70 +454,47 @@ public class WebSphereRemoteContainer implements DeployableContainer<WebSphereRe
          module2Server.put("*",targetServer);
          
          prefs.put(AppConstants.APPDEPL_MODULE_TO_SERVER, module2Server);
-         prefs.put(AppConstants.APPDEPL_ARCHIVE_UPLOAD, containerConfiguration.isArchiveUploadEnabled());
-         
-         AppManagement appManagementProxy = AppManagementProxy.getJMXProxyForClient(adminClient);
-         
-         NotificationFilterSupport filterSupport = new NotificationFilterSupport();
-         filterSupport.enableType(AppConstants.NotificationType);
-         DeploymentNotificationListener listener = new DeploymentNotificationListener(
-                  adminClient, 
-                  filterSupport, 
-                  "Install " + appName,
-                  AppNotification.INSTALL);
-         
-         appManagementProxy.installApplication(
-               exportedArchiveLocation.getAbsolutePath(),
-               appName, 
-               prefs,
-               null);
+         prefs.put(AppConstants.APPDEPL_ARCHIVE_UPLOAD, isArchiveUpload());
          
-         synchronized(listener) 
-         {
-            listener.wait();
-         }
-
-         if(!listener.isSuccessful())
-            throw new IllegalStateException("Application not sucessfully deployed: " + listener.getMessage());            
-
-         DeploymentNotificationListener distributionListener = null;
-         int checkCount = 0;
-         while (checkDistributionStatus(distributionListener) != AppNotification.DISTRIBUTION_DONE
-               && ++checkCount < 300)
+         Session configSession = openDeploymentSession();
+         boolean saved = false;
+         try
          {
-            Thread.sleep(1000);
+            timings.begin(DeploymentPhaseTimings.INSTALL_APPLICATION);
+            DeploymentNotificationListener listener = new DeploymentNotificationListener(
+                     notificationDispatcher, 
+                     appName,
+                     AppNotification.INSTALL);
             
-            distributionListener = new DeploymentNotificationListener(
-                  adminClient,
-                  filterSupport,
-                  null,
-                  AppNotification.DISTRIBUTION_STATUS_NODE);
+            appManagementProxy.installApplication(
+                  getServerPath(preparedArchive),
+                  appName, 
+                  prefs,
+                  configSession == null ? null : configSession.getSessionId());
             
-            synchronized(distributionListener)
+            awaitCompletion(listener, containerConfiguration.getInstallTimeout(), "Installation of application " + appName);
+
+            if(!listener.isSuccessful())
+               throw new IllegalStateException("Application not sucessfully deployed: " + listener.getMessage());            
+
+            if (deploymentDigest != null)
             {
-               appManagementProxy.getDistributionStatus(appName, new Hashtable<Object, Object>(), null);
-               distributionListener.wait();
+               timings.begin(DeploymentPhaseTimings.STORE_DIGEST);
+               storeDeploymentDigest(appName, deploymentDigest, configSession);
             }
+            
+            saveDeploymentSession(configSession, timings);
+            saved = true;
          }
-
-         if (checkCount < 300)
+         finally
          {
-            String targetsStarted = appManagementProxy.startApplication(appName, null, null);
-            log.info("Application was started on the following targets: " + targetsStarted);
-            if (targetsStarted == null)
-               throw new IllegalStateException("Start of the application was not successful. WAS JVM logs should contain the detailed error message.");
-         } else {
-            throw new IllegalStateException("Distribution of application did not succeed to all nodes.");
+            if (!saved && configSession != null)
+            {
+               discard(new ConfigServiceProxy(adminClient), configSession);
+            }
          }
-         
-         metaData = discoverProtocolMetaDataFromConfiguration(adminClient, 
-               serverMBean.getKeyProperty("node"),
-               serverMBean.getKeyProperty("process"),
-               appName);
-      } 
-      catch (Exception e) 
-      {
-         throw new DeploymentException("Could not deploy application", e);
+
+         awaitDistributionAndStart(appName, timings);
       }
       finally
       {
@@ -329,155 +503,382 @@ public class WebSphereRemoteContainer implements DeployableContainer<WebSphereRe
             exportedArchiveLocation.delete();
          }
       }
-      
-      if (log.isLoggable(Level.FINER)) {
-         log.exiting(className, "deploy");
-      }
-      
-      return metaData;
    }
    
-   @SuppressWarnings("rawtypes")
-   private ProtocolMetaData discoverProtocolMetaDataFromConfiguration(AdminClient adminClient, String targetNode, String targetProcess, String appName) throws InstanceNotFoundException, ConnectorException, ConfigServiceException {
-      ProtocolMetaData metaData = new ProtocolMetaData();
-      String remoteServerAddress = null;
-      int remoteServerHttpPort = 0;
-      
-      ConfigServiceProxy configServiceProxy = new ConfigServiceProxy(adminClient);
-      
-      ObjectName nodeObjectName = ConfigServiceHelper.createObjectName(null, "Node");
-      ObjectName[] nodeObjectNames = configServiceProxy.queryConfigObjects(null, null, nodeObjectName, null);
-      ObjectName targetNodeObjectName = null;
-      
-      for (ObjectName node : nodeObjectNames) {
-         String nodeName = (String) configServiceProxy.getAttribute(null, node, "name");
-         if (nodeName.equals(targetNode)) {
-            targetNodeObjectName = node;
-            remoteServerAddress = (String) configServiceProxy.getAttribute(null, targetNodeObjectName, 
-                  "hostName");
-         }
-      }
-      
-      if (remoteServerAddress == null || targetNodeObjectName == null)
-         throw new InstanceNotFoundException("Target node " + targetNode + " was not found.");
-      
-      ObjectName serverEntries = ConfigServiceHelper.createObjectName(null, "ServerEntry");
-      ObjectName[] serverEntryObjectNames = configServiceProxy.queryConfigObjects(null, 
-            targetNodeObjectName, serverEntries, null);
-      
-      for (ObjectName serverEntry : serverEntryObjectNames) {
-         String serverName = (String) configServiceProxy.getAttribute(null, serverEntry, "serverName");
-         if (serverName.equals(targetProcess)) {
-            List specialEndpoints = (List) configServiceProxy.getAttribute(null, serverEntry, 
-                  "specialEndpoints");
-            remoteServerHttpPort = getEndpointPort(specialEndpoints, "WC_defaulthost");
-         }
+   /*
+    * Pushes the entries that changed since the previous deployment as a partial application update
+    */
+   private void updateApplication(Archive<?> deploymentArchive, String appName,
+         ArchiveManifest manifest, ArchiveManifest deployedManifest, String deploymentDigest,
+         DeploymentPhaseTimings timings) throws Exception
+   {
+      if (manifest.getChangedEntries(deployedManifest).isEmpty() && manifest.getRemovedEntries(deployedManifest).isEmpty())
+      {
+         log.info("Application " + appName + " is already installed with identical content, skipping update");
+         startApplicationIfStopped(appName, timings);
+         return;
       }
       
-      log.fine("Generating HTTPContext: " + remoteServerAddress + ", " + remoteServerHttpPort);
-      HTTPContext httpContext = new HTTPContext(remoteServerAddress, remoteServerHttpPort);
+      log.info("Updating application " + appName + " with " + manifest.getChangedEntries(deployedManifest).size()
+            + " changed and " + manifest.getRemovedEntries(deployedManifest).size() + " removed entries");
       
-      try {
-         Set applicationObjectNameSet = adminClient.queryNames(
-               new ObjectName("WebSphere:type=J2EEApplication,name=" + appName + ",*"), null);
-         if (applicationObjectNameSet.isEmpty())
-            throw new InstanceNotFoundException("Unable to find application in JMX: " + appName);
+      timings.begin(DeploymentPhaseTimings.EXPORT);
+      File partialApplication = File.createTempFile(appName, ".zip", getStagingDirectory());
+      try
+      {
+         PartialApplication.export(deploymentArchive, manifest, deployedManifest, partialApplication);
          
-         ObjectName applicationObjectName = (ObjectName)applicationObjectNameSet.iterator().next();
-         String applicationDD = (String)adminClient.getAttribute(applicationObjectName, "deploymentDescriptor");
-
-         log.fine("applicationDD: " + applicationDD);
+         Hashtable<Object, Object> prefs = new Hashtable<Object, Object>();
+         prefs.put(AppConstants.APPDEPL_LOCALE, Locale.getDefault());
+         prefs.put(AppConstants.APPDEPL_ARCHIVE_UPLOAD, isArchiveUpload());
          
-         XPath xpath = XPathFactory.newInstance().newXPath();
-         xpath.setNamespaceContext(new JavaEENamespaceContext());
-         NodeList webModules = (NodeList) xpath.evaluate("/javaee:application/javaee:module/javaee:web", 
-             new InputSource(new StringReader(applicationDD)), XPathConstants.NODESET);
-
-         if (webModules.getLength() == 0){ //search J2EE 1.4 XML Schemas for backwards compatibility
-            webModules = (NodeList) xpath.evaluate("/j2ee:application/j2ee:module/j2ee:web",
-                    new InputSource(new StringReader(applicationDD)), XPathConstants.NODESET);
-         }
-
-         if (webModules.getLength() == 0){ //search no-namespace for DTD-based descriptor for backwards compatibility
-            webModules = (NodeList) xpath.evaluate("/application/module/web",
-                    new InputSource(new StringReader(applicationDD)), XPathConstants.NODESET);
-         }
-
-         for (int i=0; i < webModules.getLength(); i++) {
-            Node webModule = webModules.item(i);
-            
-            String weburi="", contextroot="";
-            NodeList webModuleChildNodes = webModule.getChildNodes();
-            for (int j=0; j < webModuleChildNodes.getLength(); j++) {
-               Node webModuleChild = webModuleChildNodes.item(j);
-               if (webModuleChild.getNodeName().equals("web-uri"))
-                  weburi = webModuleChild.getTextContent();
-               if (webModuleChild.getNodeName().equals("context-root"))
-                  contextroot = webModuleChild.getTextContent();
-            }
+         Session configSession = openDeploymentSession();
+         boolean saved = false;
+         try
+         {
+            timings.begin(DeploymentPhaseTimings.UPDATE_APPLICATION);
+            DeploymentNotificationListener listener = new DeploymentNotificationListener(
+                     notificationDispatcher, 
+                     appName,
+                     AppNotification.UPDATE);
             
-            // Now look up the currentModule and figure out its servlets
+            appManagementProxy.updateApplication(
+                  appName,
+                  null,
+                  getServerPath(partialApplication),
+                  AppConstants.APPUPDATE_CONTENT_PARTIALAPP,
+                  AppConstants.APPUPDATE_UPDATE,
+                  prefs,
+                  configSession == null ? null : configSession.getSessionId());
             
-            Set webmoduleObjectNameSet = adminClient.queryNames(
-                  new ObjectName("WebSphere:type=WebModule,name=" + weburi + ",*"), null);
-            if (webmoduleObjectNameSet.isEmpty())
-               throw new IllegalStateException("Unable to find web module in JMX: " + weburi);
+            awaitCompletion(listener, containerConfiguration.getInstallTimeout(), "Update of application " + appName);
             
-            ObjectName webmoduleObjectName = (ObjectName)webmoduleObjectNameSet.iterator().next();
-            String webmoduleDD = (String)adminClient.getAttribute(webmoduleObjectName, "deploymentDescriptor");
+            if(!listener.isSuccessful())
+               throw new IllegalStateException("Application not sucessfully updated: " + listener.getMessage());
             
-            log.fine("webmoduleDD: " + webmoduleDD);
-   
-            xpath = XPathFactory.newInstance().newXPath();
-            xpath.setNamespaceContext(new JavaEENamespaceContext());
-            NodeList servletMappings = (NodeList) xpath.evaluate("/javaee:web-app/javaee:servlet-mapping",
-                new InputSource(new StringReader(webmoduleDD)), XPathConstants.NODESET);
-
-            if (servletMappings.getLength() == 0) { //search J2EE 1.4 XML Schemas for backwards compatibility
-               servletMappings = (NodeList) xpath.evaluate("/j2ee:web-app/j2ee:servlet-mapping",
-                       new InputSource(new StringReader(webmoduleDD)), XPathConstants.NODESET);
-            }
-
-            if (servletMappings.getLength() == 0) { //search no-namespace for DTD-based descriptor for backwards compatibility
-               servletMappings = (NodeList) xpath.evaluate("/web-app/servlet-mapping",
-                       new InputSource(new StringReader(webmoduleDD)), XPathConstants.NODESET);
+            if (deploymentDigest != null)
+            {
+               timings.begin(DeploymentPhaseTimings.STORE_DIGEST);
+               storeDeploymentDigest(appName, deploymentDigest, configSession);
             }
-
-            for (int j=0; j < servletMappings.getLength(); j++) {
-               Node servletMapping = servletMappings.item(j);
-               NodeList servletMappingChildNodes = servletMapping.getChildNodes();
-               String servletName = null;
-               for (int k=0; k < servletMappingChildNodes.getLength(); k++) {
-                  Node childNode = servletMappingChildNodes.item(k);
-                  if (childNode.getNodeName().equals("url-pattern"))
-                     servletName = childNode.getTextContent().replaceFirst("/", "");
-               }
-               if (servletName != null) {
-                  log.fine("Adding servlet to context: " + servletName + ", " + contextroot);
-                  httpContext.add(new Servlet(servletName, contextroot));
-               } else {
-                  log.warning("Unable to find servlet-name in web-module " + weburi + " deployment descriptor");
-               }
+            
+            saveDeploymentSession(configSession, timings);
+            saved = true;
+         }
+         finally
+         {
+            if (!saved && configSession != null)
+            {
+               discard(new ConfigServiceProxy(adminClient), configSession);
             }
          }
-      } catch (Exception e) {
-         log.log(Level.SEVERE, "Error while processing the deployment descriptor", e);
+         
+         awaitDistribution(appName, timings);
+         startApplicationIfStopped(appName, timings);
+      }
+      finally
+      {
+         partialApplication.delete();
       }
-      
-      metaData.addContext(httpContext);
-
-      return metaData;
    }
-
-   @SuppressWarnings("rawtypes")
-   private int getEndpointPort(List specialEndpoints, String endPointIdentifier) {
-      for (Object specialEndpoint : specialEndpoints) {
-         AttributeList specialEndpointAttributeList = (AttributeList)specialEndpoint;
-         String endPointName = (String)getAttributeByName(specialEndpointAttributeList, "endPointName");
-         if (endPointName.equals(endPointIdentifier)) {
-            AttributeList endpointAttributeList = 
-               (AttributeList)getAttributeByName(specialEndpointAttributeList, "endPoint");
-            return (Integer)getAttributeByName(endpointAttributeList, "port");
+   
+   /*
+    * Writes the changed entries into the expanded application and restarts it to pick them up
+    */
+   private void refreshExplodedApplication(Archive<?> deploymentArchive, String appName, ArchiveManifest manifest,
+         ArchiveManifest deployedManifest, String deploymentDigest, DeploymentPhaseTimings timings) throws Exception
+   {
+      if (manifest.getChangedEntries(deployedManifest).isEmpty() && manifest.getRemovedEntries(deployedManifest).isEmpty())
+      {
+         log.info("Application " + appName + " is already installed with identical content, skipping update");
+         startApplicationIfStopped(appName, timings);
+         return;
+      }
+      
+      log.info("Refreshing expanded application " + appName + " with " + manifest.getChangedEntries(deployedManifest).size()
+            + " changed and " + manifest.getRemovedEntries(deployedManifest).size() + " removed entries");
+      
+      timings.begin(DeploymentPhaseTimings.EXPLODE);
+      syncExplodedApplication(deploymentArchive, appName, manifest);
+      
+      if (deploymentDigest != null)
+      {
+         timings.begin(DeploymentPhaseTimings.STORE_DIGEST);
+         storeDeploymentDigest(appName, deploymentDigest, null);
+      }
+      
+      timings.begin(DeploymentPhaseTimings.START_APPLICATION);
+      if (!adminClient.queryNames(new ObjectName("WebSphere:type=J2EEApplication,name=" + appName + ",*"), null).isEmpty())
+      {
+         appManagementProxy.stopApplication(appName, null, null);
+      }
+      String targetsStarted = appManagementProxy.startApplication(appName, null, null);
+      log.info("Application was started on the following targets: " + targetsStarted);
+      if (targetsStarted == null)
+         throw new IllegalStateException("Start of the application was not successful. WAS JVM logs should contain the detailed error message.");
+   }
+   
+   /*
+    * Brings the expanded application in the staging directory in line with the manifest
+    */
+   private void syncExplodedApplication(Archive<?> deploymentArchive, String appName, ArchiveManifest manifest)
+      throws IOException
+   {
+      // WebSphere expects the binaries of an application in <installation directory>/<application name>.ear
+      File directory = new File(getExplodedDirectory(), appName + ".ear");
+      ArchiveManifest previous = explodedManifests.remove(appName);
+      ExplodedApplication.sync(deploymentArchive, manifest, directory.isDirectory() ? previous : null, directory);
+      explodedManifests.put(appName, manifest);
+   }
+   
+   /*
+    * Opens the configuration session that collects the changes of a deployment until it is saved,
+    * or returns null if every change is saved on its own
+    */
+   private Session openDeploymentSession()
+   {
+      if (!containerConfiguration.isConfigSessionBatchingEnabled())
+         return null;
+      return new Session(containerConfiguration.getUsername(), false);
+   }
+   
+   private void saveDeploymentSession(Session configSession, DeploymentPhaseTimings timings) throws Exception
+   {
+      if (configSession == null)
+         return;
+      timings.begin(DeploymentPhaseTimings.SAVE_CONFIGURATION);
+      new ConfigServiceProxy(adminClient).save(configSession, false);
+   }
+   
+   /*
+    * Discards the changes of a failed configuration session without hiding the original failure
+    */
+   private void discard(ConfigServiceProxy configServiceProxy, Session configSession)
+   {
+      try
+      {
+         configServiceProxy.discard(configSession);
+      }
+      catch (Exception e)
+      {
+         log.log(Level.WARNING, "Unable to discard configuration session " + configSession, e);
+      }
+   }
+   
+   /*
+    * Waits for an AppManagement task and fails it once its deadline has passed
+    */
+   private void awaitCompletion(DeploymentNotificationListener listener, int timeout, String task) throws InterruptedException
+   {
+      if (!listener.await(timeout, TimeUnit.SECONDS))
+         throw new IllegalStateException(task + " did not complete within " + timeout + " seconds");
+   }
+   
+   /*
+    * Remembers the content of the installed application for later deployments. Without a deployment
+    * session the property is saved right away.
+    */
+   private void storeDeploymentDigest(String appName, String deploymentDigest, Session deploymentSession) throws Exception
+   {
+      ConfigServiceProxy configServiceProxy = new ConfigServiceProxy(adminClient);
+      Session configSession = deploymentSession != null ? deploymentSession
+            : new Session(containerConfiguration.getUsername(), false);
+      ApplicationCustomProperties.set(configServiceProxy, configSession, appName,
+            DEPLOYMENT_DIGEST_PROPERTY, deploymentDigest);
+      if (deploymentSession == null)
+      {
+         configServiceProxy.save(configSession, false);
+      }
+   }
+   
+   /*
+    * Waits until the application has been distributed to all nodes
+    */
+   private void awaitDistribution(String appName, DeploymentPhaseTimings timings) throws Exception
+   {
+      timings.begin(DeploymentPhaseTimings.DISTRIBUTION);
+      DistributionStatusTracker distributionTracker = new DistributionStatusTracker(
+            notificationDispatcher,
+            appManagementProxy,
+            appName);
+      try
+      {
+         if (!distributionTracker.awaitDistribution(
+               TimeUnit.SECONDS.toMillis(containerConfiguration.getDistributionTimeout())))
+            throw new IllegalStateException("Distribution of application did not succeed to all nodes within "
+                  + containerConfiguration.getDistributionTimeout() + " seconds.");
+      }
+      finally
+      {
+         distributionTracker.close();
+         timings.end();
+      }
+   }
+   
+   private void awaitDistributionAndStart(String appName, DeploymentPhaseTimings timings) throws Exception
+   {
+      awaitDistribution(appName, timings);
+      
+      timings.begin(DeploymentPhaseTimings.START_APPLICATION);
+      String targetsStarted = appManagementProxy.startApplication(appName, null, null);
+      log.info("Application was started on the following targets: " + targetsStarted);
+      if (targetsStarted == null)
+         throw new IllegalStateException("Start of the application was not successful. WAS JVM logs should contain the detailed error message.");
+   }
+   
+   /*
+    * Starts an installed application unless it is already running
+    */
+   private void startApplicationIfStopped(String appName, DeploymentPhaseTimings timings) throws Exception
+   {
+      timings.begin(DeploymentPhaseTimings.START_APPLICATION);
+      if (adminClient.queryNames(new ObjectName("WebSphere:type=J2EEApplication,name=" + appName + ",*"), null).isEmpty())
+      {
+         String targetsStarted = appManagementProxy.startApplication(appName, null, null);
+         log.info("Application was started on the following targets: " + targetsStarted);
+         if (targetsStarted == null)
+            throw new IllegalStateException("Start of the application was not successful. WAS JVM logs should contain the detailed error message.");
+      }
+   }
+   
+   /*
+    * Digest of the archive content and of the preferences AppDeploymentController prepares it with
+    */
+   private String createPreparedArchiveKey(Archive<?> deploymentArchive) throws IOException
+   {
+      MessageDigest digest = ArchiveManifest.newDigest();
+      ArchiveManifest.update(digest, ArchiveManifest.of(deploymentArchive).getDigest());
+      ArchiveManifest.update(digest, Locale.getDefault().toString());
+      ArchiveManifest.update(digest, containerConfiguration.getDeploymentClassLoadingMode());
+      ArchiveManifest.update(digest, containerConfiguration.getDeploymentClassLoaderPolicy());
+      ArchiveManifest.update(digest, DEFAULT_VIRTUAL_HOST);
+      return ArchiveManifest.toHex(digest.digest());
+   }
+   
+   /*
+    * Digest of the archive content and of the deployment settings that are applied at installation
+    */
+   private String createDeploymentDigest(Archive<?> deploymentArchive, ArchiveManifest manifest)
+   {
+      MessageDigest digest = ArchiveManifest.newDigest();
+      ArchiveManifest.update(digest, manifest.getDigest());
+      ArchiveManifest.update(digest, containerConfiguration.getDeploymentClassLoadingMode());
+      ArchiveManifest.update(digest, containerConfiguration.getDeploymentClassLoaderPolicy());
+      // How the application is installed, so changing the install mode or staging directories reinstalls it
+      ArchiveManifest.update(digest, String.valueOf(isExploded(deploymentArchive)));
+      ArchiveManifest.update(digest, String.valueOf(containerConfiguration.getStagingDirectory()));
+      ArchiveManifest.update(digest, String.valueOf(containerConfiguration.getServerStagingDirectory()));
+      return ArchiveManifest.toHex(digest.digest());
+   }
+   
+   @SuppressWarnings("rawtypes")
+   private ProtocolMetaData discoverProtocolMetaDataFromConfiguration(AdminClient adminClient, String targetNode, String targetProcess, String appName) throws InstanceNotFoundException, ConnectorException, ConfigServiceException {
+      ProtocolMetaData metaData = new ProtocolMetaData();
+      
+      // The topology does not change during a test run, it is only looked up again after a reconnect
+      if (endpointDiscoveryClient != adminClient) {
+         discoverHttpEndpoint(adminClient, targetNode, targetProcess);
+         endpointDiscoveryClient = adminClient;
+      }
+      
+      log.fine("Generating HTTPContext: " + remoteServerHttpAddress + ", " + remoteServerHttpPort);
+      HTTPContext httpContext = new HTTPContext(remoteServerHttpAddress, remoteServerHttpPort);
+      
+      try {
+         Set applicationObjectNameSet = adminClient.queryNames(
+               new ObjectName("WebSphere:type=J2EEApplication,name=" + appName + ",*"), null);
+         if (applicationObjectNameSet.isEmpty())
+            throw new InstanceNotFoundException("Unable to find application in JMX: " + appName);
+         
+         ObjectName applicationObjectName = (ObjectName)applicationObjectNameSet.iterator().next();
+         String applicationDD = (String)adminClient.getAttribute(applicationObjectName, "deploymentDescriptor");
+
+         log.fine("applicationDD: " + applicationDD);
+         
+         for (DeploymentDescriptorReader.WebModule webModule : DeploymentDescriptorReader.readWebModules(applicationDD)) {
+            String weburi = webModule.getWebUri();
+            String contextroot = webModule.getContextRoot();
+            
+            // Now look up the currentModule and figure out its servlets
+            
+            Set webmoduleObjectNameSet = adminClient.queryNames(
+                  new ObjectName("WebSphere:type=WebModule,name=" + weburi + ",*"), null);
+            if (webmoduleObjectNameSet.isEmpty())
+               throw new IllegalStateException("Unable to find web module in JMX: " + weburi);
+            
+            ObjectName webmoduleObjectName = (ObjectName)webmoduleObjectNameSet.iterator().next();
+            String webmoduleDD = (String)adminClient.getAttribute(webmoduleObjectName, "deploymentDescriptor");
+            
+            log.fine("webmoduleDD: " + webmoduleDD);
+   
+            for (String urlPattern : DeploymentDescriptorReader.readServletMappingUrlPatterns(webmoduleDD)) {
+               String servletName = urlPattern == null ? null : urlPattern.replaceFirst("/", "");
+               if (servletName != null) {
+                  log.fine("Adding servlet to context: " + servletName + ", " + contextroot);
+                  httpContext.add(new Servlet(servletName, contextroot));
+               } else {
+                  log.warning("Unable to find servlet-name in web-module " + weburi + " deployment descriptor");
+               }
+            }
+         }
+      } catch (Exception e) {
+         log.log(Level.SEVERE, "Error while processing the deployment descriptor", e);
+      }
+      
+      metaData.addContext(httpContext);
+
+      return metaData;
+   }
+
+   @SuppressWarnings("rawtypes")
+   private void discoverHttpEndpoint(AdminClient adminClient, String targetNode, String targetProcess) throws InstanceNotFoundException, ConnectorException, ConfigServiceException {
+      String remoteServerAddress = null;
+      int remoteServerHttpPort = 0;
+      
+      ConfigServiceProxy configServiceProxy = new ConfigServiceProxy(adminClient);
+      
+      ObjectName nodeObjectName = ConfigServiceHelper.createObjectName(null, "Node");
+      ObjectName[] nodeObjectNames = configServiceProxy.queryConfigObjects(null, null, nodeObjectName, null);
+      ObjectName targetNodeObjectName = null;
+      
+      for (ObjectName node : nodeObjectNames) {
+         String nodeName = (String) configServiceProxy.getAttribute(null, node, "name");
+         if (nodeName.equals(targetNode)) {
+            targetNodeObjectName = node;
+            remoteServerAddress = (String) configServiceProxy.getAttribute(null, targetNodeObjectName, 
+                  "hostName");
+         }
+      }
+      
+      if (remoteServerAddress == null || targetNodeObjectName == null)
+         throw new InstanceNotFoundException("Target node " + targetNode + " was not found.");
+      
+      ObjectName serverEntries = ConfigServiceHelper.createObjectName(null, "ServerEntry");
+      ObjectName[] serverEntryObjectNames = configServiceProxy.queryConfigObjects(null, 
+            targetNodeObjectName, serverEntries, null);
+      
+      for (ObjectName serverEntry : serverEntryObjectNames) {
+         String serverName = (String) configServiceProxy.getAttribute(null, serverEntry, "serverName");
+         if (serverName.equals(targetProcess)) {
+            List specialEndpoints = (List) configServiceProxy.getAttribute(null, serverEntry, 
+                  "specialEndpoints");
+            remoteServerHttpPort = getEndpointPort(specialEndpoints, "WC_defaulthost");
+         }
+      }
+      
+      this.remoteServerHttpAddress = remoteServerAddress;
+      this.remoteServerHttpPort = remoteServerHttpPort;
+   }
+
+   @SuppressWarnings("rawtypes")
+   private int getEndpointPort(List specialEndpoints, String endPointIdentifier) {
+      for (Object specialEndpoint : specialEndpoints) {
+         AttributeList specialEndpointAttributeList = (AttributeList)specialEndpoint;
+         String endPointName = (String)getAttributeByName(specialEndpointAttributeList, "endPointName");
+         if (endPointName.equals(endPointIdentifier)) {
+            AttributeList endpointAttributeList = 
+               (AttributeList)getAttributeByName(specialEndpointAttributeList, "endPoint");
+            return (Integer)getAttributeByName(endpointAttributeList, "port");
          }
       }
       return 0;
@@ -492,47 +893,6 @@ public class WebSphereRemoteContainer implements DeployableContainer<WebSphereRe
       return null;
    }
 
-   /*
-    * Checks the listener and figures out the aggregate distribution status of all nodes
-    */
-   private String checkDistributionStatus(DeploymentNotificationListener listener) throws MalformedObjectNameException, NullPointerException, IllegalStateException {
-      String distributionState = AppNotification.DISTRIBUTION_UNKNOWN;
-      if (listener != null)
-      {
-        String compositeStatus = listener.getNotificationProps()
-           .getProperty(AppNotification.DISTRIBUTION_STATUS_COMPOSITE);
-        if (compositeStatus != null)
-        {
-           log.finer("compositeStatus: " + compositeStatus);
-           String[] serverStati = compositeStatus.split("\\+");
-           int countTrue = 0, countFalse = 0, countUnknown = 0;
-           for (String serverStatus : serverStati)
-           {
-              ObjectName objectName = new ObjectName(serverStatus);
-              distributionState = objectName.getKeyProperty("distribution");
-              log.finer("distributionState: " + distributionState);
-              if (distributionState.equals("true"))
-                 countTrue++;
-              if (distributionState.equals("false"))
-                 countFalse++;
-              if (distributionState.equals("unknown"))
-                 countUnknown++;
-           }
-           if (countUnknown > 0)
-           {
-              distributionState = AppNotification.DISTRIBUTION_UNKNOWN;
-           } else if (countFalse > 0) {
-              distributionState = AppNotification.DISTRIBUTION_NOT_DONE;
-           } else if (countTrue > 0) {
-              distributionState = AppNotification.DISTRIBUTION_DONE;
-           } else {
-              throw new IllegalStateException("Reported distribution status is invalid.");
-           }
-        }
-      }
-      return distributionState;
-   }
-
    /* (non-Javadoc)
     * @see org.jboss.arquillian.spi.DeployableContainer#undeploy(org.jboss.arquillian.spi.Context, org.jboss.shrinkwrap.api.Archive)
     */
@@ -543,54 +903,179 @@ public class WebSphereRemoteContainer implements DeployableContainer<WebSphereRe
       }
       
       String appName = createDeploymentName(archive.getName());
+      DeploymentPhaseTimings timings = new DeploymentPhaseTimings(DeploymentPhaseTimings.UNDEPLOY, appName);
+      boolean successful = false;
+      boolean inBackground = false;
+      
+      fireBackgroundTimings();
       
       try
       {
-//         Session configSession = new Session(containerConfiguraiton.getUsername(), false);
-//         ConfigServiceProxy configProxy = new ConfigServiceProxy(adminClient);
-
-         Hashtable<Object, Object> prefs = new Hashtable<Object, Object>();
-
-         NotificationFilterSupport filterSupport = new NotificationFilterSupport();
-         filterSupport.enableType(AppConstants.NotificationType);
-         DeploymentNotificationListener listener = new DeploymentNotificationListener(
-                  adminClient, 
-                  filterSupport, 
-                  "Uninstall " + appName,
-                  AppNotification.UNINSTALL);
-         
-         AppManagement appManagementProxy = AppManagementProxy.getJMXProxyForClient(adminClient);
-         
-         appManagementProxy.uninstallApplication(
-               appName, 
-               prefs,
-               null);
-//               configSession.getSessionId());
-         
-         synchronized(listener) 
+         if (isRetainingApplications())
+         {
+            log.fine("Leaving application " + appName + " installed for later deployments");
+         }
+         else if (containerConfiguration.isDeferredUndeployEnabled())
          {
-            listener.wait();
+            log.fine("Deferring the uninstallation of application " + appName + " until the container stops");
+            deferredUndeployments.add(appName);
          }
-         if(listener.isSuccessful())
+         else if (containerConfiguration.isAsyncUndeployEnabled())
          {
-            //configProxy.save(configSession, true);
+            uninstallInBackground(appName);
+            inBackground = true;
          }
          else
          {
-            throw new IllegalStateException("Application not sucessfully undeployed: " + listener.getMessage());
-            //configProxy.discard(configSession);
+            uninstallApplication(appName, null, timings);
          }
+         successful = true;
       } 
       catch (Exception e) 
       {
          throw new DeploymentException("Could not undeploy application", e);
       }
+      finally
+      {
+         // Timings of a background uninstall are published by the worker
+         if (!inBackground)
+         {
+            publishTimings(timings, successful);
+         }
+      }
       
       if (log.isLoggable(Level.FINER)) {
          log.exiting(className, "undeploy");
       }
    }
 
+   /*
+    * Queues the uninstall on the undeploy worker and returns at once
+    */
+   private void uninstallInBackground(final String appName)
+   {
+      if (undeployExecutor == null)
+      {
+         undeployExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            public Thread newThread(Runnable runnable) {
+               Thread thread = new Thread(runnable, "arquillian-was-undeploy");
+               thread.setDaemon(true);
+               return thread;
+            }
+         });
+      }
+      
+      log.fine("Uninstalling application " + appName + " in the background");
+      pendingUndeployments.put(appName, undeployExecutor.submit(new Callable<Void>() {
+         public Void call() throws Exception {
+            DeploymentPhaseTimings timings = new DeploymentPhaseTimings(DeploymentPhaseTimings.UNDEPLOY, appName);
+            boolean successful = false;
+            try
+            {
+               uninstallApplication(appName, null, timings);
+               successful = true;
+               return null;
+            }
+            catch (Exception e)
+            {
+               log.log(Level.WARNING, "Could not undeploy application " + appName, e);
+               throw e;
+            }
+            finally
+            {
+               timings.finish(successful);
+               reportTimings(timings);
+               // Arquillian events have to be fired from the thread that drives the container
+               backgroundTimings.add(timings);
+            }
+         }
+      }));
+   }
+
+   /*
+    * Waits until a background uninstall of the application has finished
+    */
+   private void awaitPendingUndeployment(String appName) throws DeploymentException
+   {
+      Future<Void> pendingUndeployment = pendingUndeployments.remove(appName);
+      if (pendingUndeployment == null)
+         return;
+      
+      try
+      {
+         pendingUndeployment.get();
+      }
+      catch (ExecutionException e)
+      {
+         throw new DeploymentException("Could not undeploy application " + appName, e.getCause());
+      }
+      catch (InterruptedException e)
+      {
+         Thread.currentThread().interrupt();
+         throw new DeploymentException("Interrupted while undeploying application " + appName, e);
+      }
+   }
+
+   /*
+    * Uninstalls the application, either directly or in the workspace of the given configuration session
+    * which the caller has to save
+    */
+   private void uninstallApplication(String appName, Session configSession, DeploymentPhaseTimings timings) throws Exception
+   {
+      timings.begin(DeploymentPhaseTimings.UNINSTALL_APPLICATION);
+      Hashtable<Object, Object> prefs = new Hashtable<Object, Object>();
+
+      DeploymentNotificationListener listener = new DeploymentNotificationListener(
+               notificationDispatcher, 
+               appName,
+               AppNotification.UNINSTALL);
+      
+      appManagementProxy.uninstallApplication(
+            appName, 
+            prefs,
+            configSession == null ? null : configSession.getSessionId());
+      
+      awaitCompletion(listener, containerConfiguration.getUninstallTimeout(), "Uninstallation of application " + appName);
+      timings.end();
+      if(!listener.isSuccessful())
+      {
+         throw new IllegalStateException("Application not sucessfully undeployed: " + listener.getMessage());
+      }
+   }
+
+   /*
+    * Uninstalls all deferred applications in one configuration session, which is saved once
+    */
+   private void uninstallDeferredApplications() throws Exception
+   {
+      DeploymentPhaseTimings timings = new DeploymentPhaseTimings(DeploymentPhaseTimings.UNDEPLOY,
+            deferredUndeployments.toString());
+      boolean successful = false;
+      
+      ConfigServiceProxy configServiceProxy = new ConfigServiceProxy(adminClient);
+      Session configSession = new Session(containerConfiguration.getUsername(), false);
+      try
+      {
+         for (String appName : deferredUndeployments)
+         {
+            uninstallApplication(appName, configSession, timings);
+         }
+         
+         timings.begin(DeploymentPhaseTimings.SAVE_CONFIGURATION);
+         configServiceProxy.save(configSession, true);
+         successful = true;
+      }
+      finally
+      {
+         if (!successful)
+         {
+            discard(configServiceProxy, configSession);
+         }
+         deferredUndeployments.clear();
+         publishTimings(timings, successful);
+      }
+   }
+
    /* (non-Javadoc)
     * @see org.jboss.arquillian.spi.DeployableContainer#stop(org.jboss.arquillian.spi.Context)
     */
@@ -600,6 +1085,54 @@ public class WebSphereRemoteContainer implements DeployableContainer<WebSphereRe
          log.entering(className, "stop");
       }
       
+      // Background uninstalls need the connection, wait for all of them before releasing it
+      DeploymentException undeployFailure = null;
+      for (String appName : pendingUndeployments.keySet())
+      {
+         try
+         {
+            awaitPendingUndeployment(appName);
+         }
+         catch (DeploymentException e)
+         {
+            if (undeployFailure == null)
+               undeployFailure = e;
+         }
+      }
+      if (undeployExecutor != null)
+      {
+         undeployExecutor.shutdown();
+         undeployExecutor = null;
+      }
+      fireBackgroundTimings();
+      
+      if (!deferredUndeployments.isEmpty())
+      {
+         try
+         {
+            uninstallDeferredApplications();
+         }
+         catch (Exception e)
+         {
+            if (undeployFailure == null)
+               undeployFailure = new DeploymentException("Could not undeploy applications", e);
+         }
+      }
+      
+      if (notificationDispatcher != null)
+      {
+         notificationDispatcher.close();
+         notificationDispatcher = null;
+      }
+      appManagementProxy = null;
+      endpointDiscoveryClient = null;
+      
+      // The connection stays in the AdminClientCache for later containers and is closed at JVM shutdown
+      adminClient = null;
+      
+      if (undeployFailure != null)
+         throw new LifecycleException(undeployFailure.getMessage(), undeployFailure.getCause());
+      
       if (log.isLoggable(Level.FINER)) {
          log.exiting(className, "stop");
       }
@@ -609,6 +1142,192 @@ public class WebSphereRemoteContainer implements DeployableContainer<WebSphereRe
    // Internal Helper Methods ------------------------------------------------------------||
    //-------------------------------------------------------------------------------------||
    
+   /*
+    * Properties of the SOAP connection to the target server
+    */
+   private Properties createConnectorProperties()
+   {
+      Properties wasServerProps = new Properties();
+      wasServerProps.setProperty(AdminClient.CONNECTOR_HOST, containerConfiguration.getRemoteServerAddress());
+      wasServerProps.setProperty(AdminClient.CONNECTOR_PORT, String.valueOf(containerConfiguration.getRemoteServerSoapPort()));
+      wasServerProps.setProperty(AdminClient.CONNECTOR_TYPE, AdminClient.CONNECTOR_TYPE_SOAP);
+      wasServerProps.setProperty(AdminClient.USERNAME, containerConfiguration.getUsername());
+      
+      if (containerConfiguration.getSecurityEnabled())
+      {
+         wasServerProps.setProperty(AdminClient.CONNECTOR_SECURITY_ENABLED, "true");
+         wasServerProps.setProperty(AdminClient.PASSWORD, containerConfiguration.getPassword());
+         wasServerProps.setProperty(AdminClient.CACHE_DISABLED, "false"); 
+         wasServerProps.setProperty("javax.net.ssl.trustStore", containerConfiguration.getSslTrustStore());
+         wasServerProps.setProperty("javax.net.ssl.keyStore", containerConfiguration.getSslKeyStore());
+         wasServerProps.setProperty("javax.net.ssl.trustStorePassword", containerConfiguration.getSslTrustStorePassword());
+         wasServerProps.setProperty("javax.net.ssl.keyStorePassword", containerConfiguration.getSslKeyStorePassword());
+         if (containerConfiguration.getSslTrustStoreType() != null)
+            wasServerProps.setProperty("javax.net.ssl.trustStoreType", containerConfiguration.getSslTrustStoreType());
+         if (containerConfiguration.getSslKeyStoreType() != null)
+            wasServerProps.setProperty("javax.net.ssl.keyStoreType", containerConfiguration.getSslKeyStoreType());
+      } else {
+         wasServerProps.setProperty(AdminClient.CONNECTOR_SECURITY_ENABLED, "false");
+      }
+      return wasServerProps;
+   }
+
+   /*
+    * Opens or reuses the connection and verifies that it leads to a supported server process
+    */
+   private static AdminClient connect(Properties wasServerProps) throws Exception
+   {
+      AdminClient adminClient = AdminClientCache.getAdminClient(wasServerProps);
+      
+      ObjectName serverMBean = adminClient.getServerMBean();
+      String processType = serverMBean.getKeyProperty("processType");
+      
+      log.fine("CanonicalKeyPropertyListString: " + serverMBean.getCanonicalKeyPropertyListString());
+      
+      if (processType.equals("DeploymentManager")
+            || processType.equals("NodeAgent")
+            || processType.equals("ManagedProcess"))
+         throw new IllegalStateException("Connecting to a " + processType + " is not supported.");
+      
+      return adminClient;
+   }
+
+   /*
+    * Starts connecting on a background thread, start() joins it
+    */
+   private void connectInBackground()
+   {
+      final Properties wasServerProps = createConnectorProperties();
+      pendingConnection = new FutureTask<AdminClient>(new Callable<AdminClient>() {
+         public AdminClient call() throws Exception {
+            return connect(wasServerProps);
+         }
+      });
+      Thread thread = new Thread(pendingConnection, "arquillian-was-connect");
+      thread.setDaemon(true);
+      thread.start();
+   }
+
+   private AdminClient awaitConnection() throws Exception
+   {
+      try
+      {
+         return pendingConnection.get();
+      }
+      catch (ExecutionException e)
+      {
+         if (e.getCause() instanceof Exception)
+            throw (Exception) e.getCause();
+         throw e;
+      }
+      finally
+      {
+         pendingConnection = null;
+      }
+   }
+
+   /*
+    * Deployment cache and delta deployment keep applications installed between deployments
+    */
+   private boolean isRetainingApplications()
+   {
+      return containerConfiguration.isDeploymentCacheEnabled() || containerConfiguration.isDeltaDeploymentEnabled();
+   }
+
+   /*
+    * Makes the timings of a finished operation available as an event and in the timing report
+    */
+   private void publishTimings(DeploymentPhaseTimings timings, boolean successful)
+   {
+      timings.finish(successful);
+      reportTimings(timings);
+      fireTimings(timings);
+   }
+
+   private void reportTimings(DeploymentPhaseTimings timings)
+   {
+      log.fine("Deployment timings: " + timings);
+      
+      String reportDirectory = containerConfiguration.getDeploymentTimingReportDirectory();
+      if (reportDirectory != null && reportDirectory.length() > 0)
+      {
+         DeploymentTimingReport.append(new File(reportDirectory), timings);
+      }
+   }
+
+   private void fireTimings(DeploymentPhaseTimings timings)
+   {
+      // Not injected when the container is used outside of an Arquillian runtime
+      if (deploymentPhaseTimings != null)
+      {
+         deploymentPhaseTimings.fire(timings);
+      }
+   }
+
+   /*
+    * Fires the timings of the background uninstalls that finished since the last call
+    */
+   private void fireBackgroundTimings()
+   {
+      DeploymentPhaseTimings timings;
+      while ((timings = backgroundTimings.poll()) != null)
+      {
+         fireTimings(timings);
+      }
+   }
+
+   /*
+    * Archives are exported into a directory the server reads them from instead of being uploaded
+    */
+   private boolean isStaging()
+   {
+      String stagingDirectory = containerConfiguration.getStagingDirectory();
+      return stagingDirectory != null && stagingDirectory.length() > 0;
+   }
+
+   /*
+    * Directory archives are exported to, null for the default temporary directory
+    */
+   private File getStagingDirectory()
+   {
+      return isStaging() ? new File(containerConfiguration.getStagingDirectory()) : null;
+   }
+
+   /*
+    * Enterprise archives are run from an expanded directory in the staging directory
+    */
+   private boolean isExploded(Archive<?> deploymentArchive)
+   {
+      return containerConfiguration.isExplodedDeploymentEnabled() && isStaging()
+            && EnterpriseArchive.class.isInstance(deploymentArchive);
+   }
+
+   private File getExplodedDirectory()
+   {
+      return new File(getStagingDirectory(), "exploded");
+   }
+
+   private boolean isArchiveUpload()
+   {
+      return !isStaging() && containerConfiguration.isArchiveUploadEnabled();
+   }
+
+   /*
+    * Path under which the server finds an exported archive
+    */
+   private String getServerPath(File archive)
+   {
+      if (!isStaging())
+         return archive.getAbsolutePath();
+      
+      String serverStagingDirectory = containerConfiguration.getServerStagingDirectory();
+      if (serverStagingDirectory == null || serverStagingDirectory.length() == 0)
+         return archive.getAbsolutePath();
+      if (serverStagingDirectory.endsWith("/") || serverStagingDirectory.endsWith("\\"))
+         return serverStagingDirectory + archive.getName();
+      return serverStagingDirectory + "/" + archive.getName();
+   }
+
    private String createDeploymentName(String archiveName) 
    {
       return archiveName.substring(0, archiveName.lastIndexOf("."));
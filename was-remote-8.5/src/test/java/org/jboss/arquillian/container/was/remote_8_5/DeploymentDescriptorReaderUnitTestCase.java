@@ -0,0 +1,143 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2010-2011, Red Hat Middleware LLC, and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.arquillian.container.was.remote_8_5;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.jboss.arquillian.container.was.remote_8_5.DeploymentDescriptorReader.WebModule;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * DeploymentDescriptorReaderUnitTestCase
+ *
+ * Reads application.xml and web.xml descriptors of every supported schema
+ * generation without a server.
+ */
+public class DeploymentDescriptorReaderUnitTestCase
+{
+   private static final String JAVAEE_6_NAMESPACE = "http://java.sun.com/xml/ns/javaee";
+   private static final String JAVAEE_7_NAMESPACE = "http://xmlns.jcp.org/xml/ns/javaee";
+   private static final String J2EE_14_NAMESPACE = "http://java.sun.com/xml/ns/j2ee";
+
+   private static final String APPLICATION_DOCTYPE = "<!DOCTYPE application PUBLIC "
+         + "\"-//Sun Microsystems, Inc.//DTD J2EE Application 1.3//EN\" "
+         + "\"http://java.sun.com/dtd/application_1_3.dtd\">";
+   private static final String WEB_APP_DOCTYPE = "<!DOCTYPE web-app PUBLIC "
+         + "\"-//Sun Microsystems, Inc.//DTD Web Application 2.3//EN\" "
+         + "\"http://java.sun.com/dtd/web-app_2_3.dtd\">";
+
+   @Test
+   public void should_read_javaee_6_web_modules() throws Exception
+   {
+      assertWebModules(DeploymentDescriptorReader.readWebModules(application("", namespace(JAVAEE_6_NAMESPACE, "6"))));
+   }
+
+   @Test
+   public void should_read_javaee_7_web_modules() throws Exception
+   {
+      assertWebModules(DeploymentDescriptorReader.readWebModules(application("", namespace(JAVAEE_7_NAMESPACE, "7"))));
+   }
+
+   @Test
+   public void should_read_j2ee_14_web_modules() throws Exception
+   {
+      assertWebModules(DeploymentDescriptorReader.readWebModules(application("", namespace(J2EE_14_NAMESPACE, "1.4"))));
+   }
+
+   @Test
+   public void should_read_dtd_web_modules() throws Exception
+   {
+      assertWebModules(DeploymentDescriptorReader.readWebModules(application(APPLICATION_DOCTYPE, "")));
+   }
+
+   @Test
+   public void should_read_javaee_6_servlet_mappings() throws Exception
+   {
+      assertUrlPatterns(DeploymentDescriptorReader.readServletMappingUrlPatterns(webApp("", namespace(JAVAEE_6_NAMESPACE, "3.0"))));
+   }
+
+   @Test
+   public void should_read_javaee_7_servlet_mappings() throws Exception
+   {
+      assertUrlPatterns(DeploymentDescriptorReader.readServletMappingUrlPatterns(webApp("", namespace(JAVAEE_7_NAMESPACE, "3.1"))));
+   }
+
+   @Test
+   public void should_read_j2ee_14_servlet_mappings() throws Exception
+   {
+      assertUrlPatterns(DeploymentDescriptorReader.readServletMappingUrlPatterns(webApp("", namespace(J2EE_14_NAMESPACE, "2.4"))));
+   }
+
+   @Test
+   public void should_read_dtd_servlet_mappings() throws Exception
+   {
+      assertUrlPatterns(DeploymentDescriptorReader.readServletMappingUrlPatterns(webApp(WEB_APP_DOCTYPE, "")));
+   }
+
+   @Test
+   public void should_ignore_other_root_elements() throws Exception
+   {
+      Assert.assertTrue(DeploymentDescriptorReader.readWebModules(webApp("", "")).isEmpty());
+      Assert.assertTrue(DeploymentDescriptorReader.readServletMappingUrlPatterns(application("", "")).isEmpty());
+   }
+
+   private static void assertWebModules(List<WebModule> webModules)
+   {
+      Assert.assertEquals(2, webModules.size());
+      Assert.assertEquals("test.war", webModules.get(0).getWebUri());
+      Assert.assertEquals("/test", webModules.get(0).getContextRoot());
+      Assert.assertEquals("other.war", webModules.get(1).getWebUri());
+      Assert.assertEquals("/other", webModules.get(1).getContextRoot());
+   }
+
+   private static void assertUrlPatterns(List<String> urlPatterns)
+   {
+      Assert.assertEquals(Arrays.asList("/ArquillianServletRunner", "/last/*", null), urlPatterns);
+   }
+
+   private static String namespace(String namespace, String version)
+   {
+      return " xmlns=\"" + namespace + "\" version=\"" + version + "\"";
+   }
+
+   private static String application(String doctype, String rootAttributes)
+   {
+      return "<?xml version=\"1.0\" encoding=\"UTF-8\"?>" + doctype
+            + "<application" + rootAttributes + ">"
+            + "<display-name>test</display-name>"
+            + "<module><ejb>test.jar</ejb></module>"
+            + "<module><web><web-uri>test.war</web-uri><context-root>/test</context-root></web></module>"
+            + "<module><web><web-uri>other.war</web-uri><context-root>/other</context-root></web></module>"
+            + "</application>";
+   }
+
+   private static String webApp(String doctype, String rootAttributes)
+   {
+      return "<?xml version=\"1.0\" encoding=\"UTF-8\"?>" + doctype
+            + "<web-app" + rootAttributes + ">"
+            + "<servlet><servlet-name>ArquillianServletRunner</servlet-name>"
+            + "<servlet-class>org.jboss.arquillian.protocol.servlet.runner.ServletTestRunner</servlet-class></servlet>"
+            + "<servlet-mapping><servlet-name>ArquillianServletRunner</servlet-name>"
+            + "<url-pattern>/ArquillianServletRunner</url-pattern></servlet-mapping>"
+            + "<servlet-mapping><servlet-name>Greeter</servlet-name>"
+            + "<url-pattern>/first/*</url-pattern><url-pattern>/last/*</url-pattern></servlet-mapping>"
+            + "<servlet-mapping><servlet-name>Unmapped</servlet-name></servlet-mapping>"
+            + "</web-app>";
+   }
+}
@@ -0,0 +1,193 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2010-2011, Red Hat Middleware LLC, and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.arquillian.container.was.remote_8_5;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import org.jboss.shrinkwrap.api.ShrinkWrap;
+import org.jboss.shrinkwrap.api.asset.StringAsset;
+import org.jboss.shrinkwrap.api.spec.EnterpriseArchive;
+import org.jboss.shrinkwrap.api.spec.JavaArchive;
+import org.jboss.shrinkwrap.api.spec.WebArchive;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * PartialApplicationUnitTestCase
+ *
+ * Computes the application view, the deltas and the partial application zip of
+ * in-memory enterprise archives without a server.
+ */
+public class PartialApplicationUnitTestCase
+{
+   private static final String APPLICATION_XML = "<application/>";
+
+   @Test
+   public void should_list_module_entries_with_module_uri() throws Exception
+   {
+      ArchiveManifest manifest = ArchiveManifest.ofApplication(application("one", "library", "old"));
+
+      Assert.assertEquals(new TreeSet<String>(Arrays.asList("test.war")), manifest.getModules());
+      Assert.assertEquals(new TreeSet<String>(Arrays.asList(
+            "/META-INF/application.xml",
+            "/META-INF/old.txt",
+            "/test.war/WEB-INF/classes/greeting.txt",
+            "/test.war/WEB-INF/classes/obsolete.txt",
+            "/test.war/WEB-INF/lib/library.jar")), manifest.getEntries().keySet());
+   }
+
+   @Test
+   public void should_report_changed_entries() throws Exception
+   {
+      ArchiveManifest previous = ArchiveManifest.ofApplication(application("one", "library", "old"));
+      ArchiveManifest manifest = ArchiveManifest.ofApplication(application("two", "changed library", "old"));
+
+      // Libraries inside a module are entries of their own
+      Assert.assertEquals(new TreeSet<String>(Arrays.asList(
+            "/test.war/WEB-INF/classes/greeting.txt",
+            "/test.war/WEB-INF/lib/library.jar")), manifest.getChangedEntries(previous));
+      Assert.assertTrue(manifest.getRemovedEntries(previous).isEmpty());
+      Assert.assertTrue(ArchiveManifest.ofApplication(application("one", "library", "old"))
+            .getChangedEntries(previous).isEmpty());
+   }
+
+   @Test
+   public void should_report_removed_entries_at_root_and_in_modules() throws Exception
+   {
+      ArchiveManifest previous = ArchiveManifest.ofApplication(application("one", "library", "old"));
+      ArchiveManifest manifest = ArchiveManifest.ofApplication(application("one", "library", null));
+
+      Assert.assertEquals(new TreeSet<String>(Arrays.asList(
+            "/META-INF/old.txt",
+            "/test.war/WEB-INF/classes/obsolete.txt")), manifest.getRemovedEntries(previous));
+      Assert.assertTrue(manifest.getChangedEntries(previous).isEmpty());
+   }
+
+   @Test
+   public void should_export_changed_entries_and_deletions_per_archive_level() throws Exception
+   {
+      EnterpriseArchive application = application("two", "library", null);
+      ArchiveManifest previous = ArchiveManifest.ofApplication(application("one", "library", "old"));
+      ArchiveManifest manifest = ArchiveManifest.ofApplication(application);
+
+      File partialApplication = File.createTempFile("partial", ".zip");
+      try
+      {
+         PartialApplication.export(application, manifest, previous, partialApplication);
+
+         Map<String, String> entries = readZip(partialApplication);
+         Assert.assertEquals(new TreeSet<String>(Arrays.asList(
+               "META-INF/ibm-partialapp-delete.props",
+               "test.war/META-INF/ibm-partialapp-delete.props",
+               "test.war/WEB-INF/classes/greeting.txt")), entries.keySet());
+         Assert.assertEquals("two", entries.get("test.war/WEB-INF/classes/greeting.txt"));
+         Assert.assertEquals("META-INF/old.txt\n", entries.get("META-INF/ibm-partialapp-delete.props"));
+         Assert.assertEquals("WEB-INF/classes/obsolete.txt\n", entries.get("test.war/META-INF/ibm-partialapp-delete.props"));
+      }
+      finally
+      {
+         partialApplication.delete();
+      }
+   }
+
+   @Test
+   public void should_update_application_with_unchanged_modules() throws Exception
+   {
+      ArchiveManifest previous = ArchiveManifest.ofApplication(application("one", "library", "old"));
+
+      Assert.assertTrue(PartialApplication.isUpdatable(
+            ArchiveManifest.ofApplication(application("two", "changed library", null)), previous));
+   }
+
+   @Test
+   public void should_reinstall_application_when_modules_change() throws Exception
+   {
+      ArchiveManifest previous = ArchiveManifest.ofApplication(application("one", "library", "old"));
+
+      EnterpriseArchive added = application("one", "library", "old")
+            .addAsModule(ShrinkWrap.create(JavaArchive.class, "ejb.jar").add(new StringAsset("ejb"), "ejb.txt"));
+      Assert.assertFalse(PartialApplication.isUpdatable(ArchiveManifest.ofApplication(added), previous));
+
+      EnterpriseArchive removed = ShrinkWrap.create(EnterpriseArchive.class, "test.ear")
+            .setApplicationXML(new StringAsset(APPLICATION_XML));
+      Assert.assertFalse(PartialApplication.isUpdatable(ArchiveManifest.ofApplication(removed), previous));
+   }
+
+   @Test
+   public void should_reinstall_application_when_application_xml_changes() throws Exception
+   {
+      ArchiveManifest previous = ArchiveManifest.ofApplication(application("one", "library", "old"));
+
+      EnterpriseArchive changed = application("one", "library", "old")
+            .setApplicationXML(new StringAsset("<application><display-name>test</display-name></application>"));
+      Assert.assertFalse(PartialApplication.isUpdatable(ArchiveManifest.ofApplication(changed), previous));
+   }
+
+   /*
+    * An application with a web module holding a greeting and a library, plus a root resource
+    * and a resource inside the module that are only present while oldResource is not null
+    */
+   private static EnterpriseArchive application(String greeting, String library, String oldResource)
+   {
+      WebArchive web = ShrinkWrap.create(WebArchive.class, "test.war")
+            .add(new StringAsset(greeting), "WEB-INF/classes/greeting.txt")
+            .addAsLibrary(ShrinkWrap.create(JavaArchive.class, "library.jar").add(new StringAsset(library), "library.txt"));
+      EnterpriseArchive application = ShrinkWrap.create(EnterpriseArchive.class, "test.ear")
+            .setApplicationXML(new StringAsset(APPLICATION_XML));
+      if (oldResource != null)
+      {
+         web.add(new StringAsset(oldResource), "WEB-INF/classes/obsolete.txt");
+         application.add(new StringAsset(oldResource), "META-INF/old.txt");
+      }
+      return application.addAsModule(web);
+   }
+
+   private static Map<String, String> readZip(File zip) throws IOException
+   {
+      Map<String, String> entries = new TreeMap<String, String>();
+      ZipInputStream in = new ZipInputStream(new FileInputStream(zip));
+      try
+      {
+         ZipEntry entry;
+         while ((entry = in.getNextEntry()) != null)
+         {
+            ByteArrayOutputStream content = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1)
+            {
+               content.write(buffer, 0, read);
+            }
+            entries.put(entry.getName(), content.toString("UTF-8"));
+         }
+      }
+      finally
+      {
+         in.close();
+      }
+      return entries;
+   }
+}
@@ -0,0 +1,84 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2010-2011, Red Hat Middleware LLC, and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.arquillian.container.was.remote_9;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.ObjectName;
+
+import com.ibm.websphere.management.Session;
+import com.ibm.websphere.management.configservice.ConfigServiceProxy;
+import com.ibm.websphere.management.exception.ConfigServiceException;
+import com.ibm.websphere.management.exception.ConnectorException;
+
+/**
+ * Reads and writes custom properties of an installed application, which are stored
+ * on the ApplicationDeployment object of the application's deployment.xml.
+ */
+public class ApplicationCustomProperties
+{
+   private ApplicationCustomProperties()
+   {
+   }
+
+   /**
+    * @return the value of the custom property, or null if the application or the property does not exist
+    */
+   public static String get(ConfigServiceProxy configService, Session session, String appName, String name)
+      throws ConfigServiceException, ConnectorException
+   {
+      ObjectName[] properties = configService.resolve(session, propertyPath(appName, name));
+      if (properties == null || properties.length == 0)
+         return null;
+      return (String) configService.getAttribute(session, properties[0], "value");
+   }
+
+   /**
+    * Creates or updates the custom property in the given configuration session. The
+    * change becomes visible once the session is saved.
+    */
+   public static void set(ConfigServiceProxy configService, Session session, String appName, String name, String value)
+      throws ConfigServiceException, ConnectorException
+   {
+      AttributeList attributes = new AttributeList();
+      attributes.add(new Attribute("value", value));
+
+      ObjectName[] properties = configService.resolve(session, propertyPath(appName, name));
+      if (properties != null && properties.length > 0)
+      {
+         configService.setAttributes(session, properties[0], attributes);
+         return;
+      }
+
+      ObjectName[] applicationDeployments = configService.resolve(session, applicationDeploymentPath(appName));
+      if (applicationDeployments == null || applicationDeployments.length == 0)
+         throw new IllegalStateException("Unable to find the deployment configuration of application " + appName);
+
+      attributes.add(new Attribute("name", name));
+      configService.createConfigData(session, applicationDeployments[0], "properties", "Property", attributes);
+   }
+
+   private static String applicationDeploymentPath(String appName)
+   {
+      return "Deployment=" + appName + ":ApplicationDeployment=";
+   }
+
+   private static String propertyPath(String appName, String name)
+   {
+      return applicationDeploymentPath(appName) + ":Property=" + name;
+   }
+}
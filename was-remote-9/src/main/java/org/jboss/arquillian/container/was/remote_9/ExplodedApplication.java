@@ -0,0 +1,110 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2010-2011, Red Hat Middleware LLC, and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.arquillian.container.was.remote_9;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import org.jboss.shrinkwrap.api.Archive;
+
+/**
+ * Writes the application view of an archive (see {@link ArchiveManifest#ofApplication(Archive)})
+ * to a directory in the layout of an expanded enterprise application: the modules at the root
+ * of the archive become directories, while libraries inside them stay archives.
+ *
+ * Given the manifest of the content already in the directory, only the entries that changed are
+ * written and the entries that no longer exist are deleted.
+ */
+public class ExplodedApplication
+{
+   private ExplodedApplication()
+   {
+   }
+
+   /**
+    * Brings the directory in line with the manifest of the application.
+    *
+    * @param previous the manifest of the content in the directory, or null if it is unknown,
+    *        in which case the directory is rewritten completely
+    */
+   public static void sync(Archive<?> application, ArchiveManifest manifest, ArchiveManifest previous, File directory)
+      throws IOException
+   {
+      if (previous == null)
+      {
+         delete(directory);
+      }
+
+      for (String path : previous == null ? manifest.getEntries().keySet() : manifest.getChangedEntries(previous))
+      {
+         File file = new File(directory, path.substring(1));
+         File parent = file.getParentFile();
+         if (!parent.isDirectory() && !parent.mkdirs())
+            throw new IOException("Unable to create directory " + parent);
+
+         InputStream in = PartialApplication.resolve(application, manifest, path).openStream();
+         try
+         {
+            OutputStream out = new FileOutputStream(file);
+            try
+            {
+               byte[] buffer = new byte[8192];
+               int read;
+               while ((read = in.read(buffer)) != -1)
+               {
+                  out.write(buffer, 0, read);
+               }
+            }
+            finally
+            {
+               out.close();
+            }
+         }
+         finally
+         {
+            in.close();
+         }
+      }
+
+      if (previous != null)
+      {
+         for (String path : manifest.getRemovedEntries(previous))
+         {
+            File file = new File(directory, path.substring(1));
+            if (file.exists() && !file.delete())
+               throw new IOException("Unable to delete " + file);
+         }
+      }
+   }
+
+   private static void delete(File file) throws IOException
+   {
+      File[] children = file.listFiles();
+      if (children != null)
+      {
+         for (File child : children)
+         {
+            delete(child);
+         }
+      }
+      if (file.exists() && !file.delete())
+         throw new IOException("Unable to delete " + file);
+   }
+}
@@ -0,0 +1,138 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2010-2011, Red Hat Middleware LLC, and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.arquillian.container.was.remote_9;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.jboss.shrinkwrap.api.Archive;
+import org.jboss.shrinkwrap.api.Node;
+import org.jboss.shrinkwrap.api.asset.ArchiveAsset;
+import org.jboss.shrinkwrap.api.asset.Asset;
+
+/**
+ * Writes the partial application zip used by AppManagement.updateApplication with the
+ * partialapp content type. The zip contains the changed entries of the application view
+ * of an archive (see {@link ArchiveManifest#ofApplication(Archive)}) and lists removed
+ * entries in a META-INF/ibm-partialapp-delete.props file of the archive they belong to.
+ */
+public class PartialApplication
+{
+   static final String DELETE_PROPS = "META-INF/ibm-partialapp-delete.props";
+
+   private PartialApplication()
+   {
+   }
+
+   /**
+    * Exports the entries that changed between the previous and the current manifest of the application.
+    */
+   public static void export(Archive<?> application, ArchiveManifest manifest, ArchiveManifest previous, File target)
+      throws IOException
+   {
+      ZipOutputStream zip = new ZipOutputStream(new FileOutputStream(target));
+      try
+      {
+         for (String path : manifest.getChangedEntries(previous))
+         {
+            zip.putNextEntry(new ZipEntry(path.substring(1)));
+            InputStream in = resolve(application, manifest, path).openStream();
+            try
+            {
+               byte[] buffer = new byte[8192];
+               int read;
+               while ((read = in.read(buffer)) != -1)
+               {
+                  zip.write(buffer, 0, read);
+               }
+            }
+            finally
+            {
+               in.close();
+            }
+            zip.closeEntry();
+         }
+
+         // Group the removed entries by the archive level they have to be deleted from
+         Map<String, StringBuilder> deletions = new TreeMap<String, StringBuilder>();
+         for (String path : manifest.getRemovedEntries(previous))
+         {
+            String module = moduleOf(manifest, path);
+            String level = module == null ? "" : module + "/";
+            StringBuilder lines = deletions.get(level);
+            if (lines == null)
+            {
+               lines = new StringBuilder();
+               deletions.put(level, lines);
+            }
+            lines.append(path.substring(level.length() + 1)).append('\n');
+         }
+         for (Map.Entry<String, StringBuilder> deletion : deletions.entrySet())
+         {
+            zip.putNextEntry(new ZipEntry(deletion.getKey() + DELETE_PROPS));
+            zip.write(deletion.getValue().toString().getBytes("UTF-8"));
+            zip.closeEntry();
+         }
+      }
+      finally
+      {
+         zip.close();
+      }
+   }
+
+   /**
+    * @return true if the application can be updated from the previous manifest to the current one
+    *         without reinstalling it, that is the module structure and application.xml are unchanged
+    */
+   public static boolean isUpdatable(ArchiveManifest manifest, ArchiveManifest previous)
+   {
+      String descriptor = "/META-INF/application.xml";
+      String current = manifest.getEntries().get(descriptor);
+      String before = previous.getEntries().get(descriptor);
+      return manifest.getModules().equals(previous.getModules())
+            && (current == null ? before == null : current.equals(before));
+   }
+
+   static Asset resolve(Archive<?> application, ArchiveManifest manifest, String path)
+   {
+      String module = moduleOf(manifest, path);
+      if (module == null)
+         return application.get(path).getAsset();
+
+      Archive<?> moduleArchive = ((ArchiveAsset) application.get("/" + module).getAsset()).getArchive();
+      Node node = moduleArchive.get(path.substring(module.length() + 1));
+      return node.getAsset();
+   }
+
+   private static String moduleOf(ArchiveManifest manifest, String path)
+   {
+      Set<String> modules = manifest.getModules();
+      for (String module : modules)
+      {
+         if (path.startsWith("/" + module + "/"))
+            return module;
+      }
+      return null;
+   }
+}
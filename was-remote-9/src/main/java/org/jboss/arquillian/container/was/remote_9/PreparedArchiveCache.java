@@ -0,0 +1,156 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2010-2011, Red Hat Middleware LLC, and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.arquillian.container.was.remote_9;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.logging.Logger;
+
+/**
+ * Local directory of archives prepared by AppDeploymentController, keyed by the digest
+ * of the archive content and the preferences it was prepared with.
+ *
+ * The last modification time of an entry is updated whenever it is used, and the least
+ * recently used entries are removed once the entries exceed the maximum size.
+ */
+public class PreparedArchiveCache
+{
+   private static Logger log = Logger.getLogger(PreparedArchiveCache.class.getName());
+
+   private static final String TEMP_SUFFIX = ".tmp";
+
+   private File directory;
+   private long maxSize;
+
+   /**
+    * @param directory the cache directory, created when the first archive is added
+    * @param maxSize the maximum total size of the cached archives in bytes
+    */
+   public PreparedArchiveCache(File directory, long maxSize)
+   {
+      this.directory = directory;
+      this.maxSize = maxSize;
+   }
+
+   /**
+    * @return the prepared archive stored under the key, or null if there is none
+    */
+   public synchronized File get(String key, String extension)
+   {
+      File entry = new File(directory, key + extension);
+      if (!entry.isFile())
+         return null;
+
+      entry.setLastModified(System.currentTimeMillis());
+      return entry;
+   }
+
+   /**
+    * Stores a copy of the prepared archive under the key and evicts the least recently
+    * used archives if the cache has grown beyond its maximum size.
+    */
+   public synchronized void put(String key, String extension, File preparedArchive) throws IOException
+   {
+      if (!directory.isDirectory() && !directory.mkdirs())
+         throw new IOException("Unable to create directory " + directory);
+
+      // Copy under a temporary name first, so an aborted copy is never used as a cache entry
+      File entry = new File(directory, key + extension);
+      File temp = File.createTempFile("prepared", TEMP_SUFFIX, directory);
+      try
+      {
+         copy(preparedArchive, temp);
+         if (!temp.renameTo(entry) && !(entry.delete() && temp.renameTo(entry)))
+            throw new IOException("Unable to store prepared archive " + entry);
+      }
+      finally
+      {
+         temp.delete();
+      }
+
+      evict(entry);
+   }
+
+   private void evict(File retained)
+   {
+      File[] entries = directory.listFiles(new FileFilter() {
+         public boolean accept(File file) {
+            return file.isFile() && !file.getName().endsWith(TEMP_SUFFIX);
+         }
+      });
+      if (entries == null)
+         return;
+
+      long size = 0;
+      for (File entry : entries)
+      {
+         size += entry.length();
+      }
+
+      Arrays.sort(entries, new Comparator<File>() {
+         public int compare(File first, File second) {
+            long difference = first.lastModified() - second.lastModified();
+            return difference < 0 ? -1 : (difference > 0 ? 1 : 0);
+         }
+      });
+      for (int i = 0; i < entries.length && size > maxSize; i++)
+      {
+         if (entries[i].equals(retained))
+            continue;
+
+         long length = entries[i].length();
+         if (entries[i].delete())
+         {
+            log.fine("Evicted prepared archive " + entries[i] + " from the cache");
+            size -= length;
+         }
+      }
+   }
+
+   static void copy(File source, File target) throws IOException
+   {
+      InputStream in = new FileInputStream(source);
+      try
+      {
+         OutputStream out = new FileOutputStream(target);
+         try
+         {
+            byte[] buffer = new byte[65536];
+            int read;
+            while ((read = in.read(buffer)) != -1)
+            {
+               out.write(buffer, 0, read);
+            }
+         }
+         finally
+         {
+            out.close();
+         }
+      }
+      finally
+      {
+         in.close();
+      }
+   }
+}
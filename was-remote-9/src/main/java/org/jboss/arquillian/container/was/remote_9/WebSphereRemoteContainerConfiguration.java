@@ -16,6 +16,8 @@
  */
 package org.jboss.arquillian.container.was.remote_9;
 
+import java.io.File;
+
 import com.ibm.websphere.management.application.AppConstants;
 import org.jboss.arquillian.container.spi.ConfigurationException;
 import org.jboss.arquillian.container.spi.client.container.ContainerConfiguration;
@@ -67,6 +69,79 @@ public class WebSphereRemoteContainerConfiguration implements ContainerConfigura
     */
    private String deploymentClassLoaderPolicy = AppConstants.APPDEPL_CLASSLOADERPOLICY_MULTIPLE;
 
+   /** Keeps applications installed on undeploy and skips the installation of an archive when an
+    * application with the same name and identical content is already installed. The content digest
+    * is stored as a custom property of the installed application. */
+   private boolean deploymentCacheEnabled = false;
+
+   /** Keeps applications installed on undeploy and redeploys a changed archive by pushing only the
+    * changed entries through AppManagement.updateApplication, leaving unchanged modules running. Falls
+    * back to a full installation when modules or application.xml changed. */
+   private boolean deltaDeploymentEnabled = false;
+
+   /** Directory the JSON report with the phase timings of every deploy and undeploy is written to.
+    * Relative paths are resolved against the working directory of the test run. An empty value
+    * disables the report; the timings are still fired as Arquillian events. */
+   private String deploymentTimingReportDirectory = "target";
+
+   /** Maximum time in seconds to wait for the installation or update of an application to complete. */
+   private int installTimeout = 600;
+
+   /** Maximum time in seconds to wait for an installed application to be distributed to all nodes. */
+   private int distributionTimeout = 300;
+
+   /** Maximum time in seconds to wait for the uninstallation of an application to complete. */
+   private int uninstallTimeout = 300;
+
+   /** Uninstalls applications on a background thread so that undeploy returns at once. A later
+    * deployment of an application with the same name, and stopping the container, wait for the
+    * pending uninstalls. Has no effect while applications are kept installed by the deployment
+    * cache or delta deployment. */
+   private boolean asyncUndeployEnabled = false;
+
+   /** Keeps applications installed on undeploy and uninstalls all of them when the container stops,
+    * in a single configuration session that is saved once. A later deployment of an application with
+    * the same name uninstalls it right away. Takes precedence over asyncUndeployEnabled. */
+   private boolean deferredUndeployEnabled = false;
+
+   /** Installs or updates an application and stores its custom properties in a single configuration
+    * session, which is saved once before the application is distributed and started, and discarded
+    * if any of these steps fails. */
+   private boolean configSessionBatchingEnabled = false;
+
+   /** Directory in which archives prepared by AppDeploymentController are kept, keyed by their content
+    * and the classloader and binding preferences, so identical archives skip the preparation. Empty
+    * by default, which disables the cache. */
+   private String preparedArchiveCacheDirectory = "";
+
+   /** Maximum size in megabytes of the prepared archive cache. The least recently used archives are
+    * removed when it is exceeded. */
+   private int preparedArchiveCacheMaxSize = 1024;
+
+   /** Directory shared with the server, for example an NFS mount, into which archives are exported
+    * instead of being uploaded through the connector. Empty by default, which disables staging and
+    * leaves archiveUploadEnabled in effect. */
+   private String stagingDirectory = "";
+
+   /** Path of the staging directory as seen by the server. Defaults to stagingDirectory when empty. */
+   private String serverStagingDirectory = "";
+
+   /** Installs a WebArchive as a standalone web module, with its name as context root, instead of
+    * wrapping it into a generated EnterpriseArchive that is prepared by AppDeploymentController.
+    * Changed standalone web modules are always reinstalled, never updated through delta deployment. */
+   private boolean directWarDeploymentEnabled = false;
+
+   /** Runs enterprise applications from an expanded copy in the staging directory, which the server
+    * neither extracts nor distributes. Later deployments only write the entries that changed, and
+    * a retained application whose modules are unchanged is refreshed by restarting it. Requires
+    * stagingDirectory. */
+   private boolean explodedDeploymentEnabled = false;
+
+   /** Starts connecting to the server on a background thread as soon as the container is set up, so
+    * that the SOAP and SSL connection setup overlaps with other startup work. Starting the container
+    * waits for the connection and reports its failure. */
+   private boolean eagerConnectionEnabled = false;
+
    /**
     * @return the remoteServerAddress
     */
@@ -200,6 +275,32 @@ public class WebSphereRemoteContainerConfiguration implements ContainerConfigura
                                                           AppConstants.APPDEPL_CLASSLOADERPOLICY_MULTIPLE,
                                                           AppConstants.APPDEPL_CLASSLOADERPOLICY_SINGLE));
        }
+
+       validateTimeout("installTimeout", installTimeout);
+       validateTimeout("distributionTimeout", distributionTimeout);
+       validateTimeout("uninstallTimeout", uninstallTimeout);
+
+       if (stagingDirectory != null && stagingDirectory.length() > 0 && !new File(stagingDirectory).isDirectory()) {
+           throw new ConfigurationException(String.format("Staging directory %s does not exist", stagingDirectory));
+       }
+
+       if (explodedDeploymentEnabled && (stagingDirectory == null || stagingDirectory.length() == 0)) {
+           throw new ConfigurationException("explodedDeploymentEnabled requires a stagingDirectory");
+       }
+
+       if (preparedArchiveCacheMaxSize <= 0) {
+           throw new ConfigurationException(String.format("Illegal value %d for preparedArchiveCacheMaxSize. "
+                                                          + "The size has to be a positive number of megabytes",
+                                                          preparedArchiveCacheMaxSize));
+       }
+   }
+
+   private void validateTimeout(String name, int timeout) throws ConfigurationException {
+       if (timeout <= 0) {
+           throw new ConfigurationException(String.format("Illegal value %d for %s. "
+                                                          + "The timeout has to be a positive number of seconds",
+                                                          timeout, name));
+       }
    }
 
    public void setArchiveUploadEnabled(boolean enabled) {
@@ -225,4 +326,132 @@ public class WebSphereRemoteContainerConfiguration implements ContainerConfigura
    public void setDeploymentClassLoaderPolicy(final String deploymentClassLoaderPolicy) {
        this.deploymentClassLoaderPolicy = deploymentClassLoaderPolicy;
    }
+
+   public boolean isDeploymentCacheEnabled() {
+       return this.deploymentCacheEnabled;
+   }
+
+   public void setDeploymentCacheEnabled(final boolean deploymentCacheEnabled) {
+       this.deploymentCacheEnabled = deploymentCacheEnabled;
+   }
+
+   public boolean isDeltaDeploymentEnabled() {
+       return this.deltaDeploymentEnabled;
+   }
+
+   public void setDeltaDeploymentEnabled(final boolean deltaDeploymentEnabled) {
+       this.deltaDeploymentEnabled = deltaDeploymentEnabled;
+   }
+
+   public String getDeploymentTimingReportDirectory() {
+       return this.deploymentTimingReportDirectory;
+   }
+
+   public void setDeploymentTimingReportDirectory(final String deploymentTimingReportDirectory) {
+       this.deploymentTimingReportDirectory = deploymentTimingReportDirectory;
+   }
+
+   public int getInstallTimeout() {
+       return this.installTimeout;
+   }
+
+   public void setInstallTimeout(final int installTimeout) {
+       this.installTimeout = installTimeout;
+   }
+
+   public int getDistributionTimeout() {
+       return this.distributionTimeout;
+   }
+
+   public void setDistributionTimeout(final int distributionTimeout) {
+       this.distributionTimeout = distributionTimeout;
+   }
+
+   public int getUninstallTimeout() {
+       return this.uninstallTimeout;
+   }
+
+   public void setUninstallTimeout(final int uninstallTimeout) {
+       this.uninstallTimeout = uninstallTimeout;
+   }
+
+   public boolean isAsyncUndeployEnabled() {
+       return this.asyncUndeployEnabled;
+   }
+
+   public void setAsyncUndeployEnabled(final boolean asyncUndeployEnabled) {
+       this.asyncUndeployEnabled = asyncUndeployEnabled;
+   }
+
+   public boolean isDeferredUndeployEnabled() {
+       return this.deferredUndeployEnabled;
+   }
+
+   public void setDeferredUndeployEnabled(final boolean deferredUndeployEnabled) {
+       this.deferredUndeployEnabled = deferredUndeployEnabled;
+   }
+
+   public boolean isConfigSessionBatchingEnabled() {
+       return this.configSessionBatchingEnabled;
+   }
+
+   public void setConfigSessionBatchingEnabled(final boolean configSessionBatchingEnabled) {
+       this.configSessionBatchingEnabled = configSessionBatchingEnabled;
+   }
+
+   public String getPreparedArchiveCacheDirectory() {
+       return this.preparedArchiveCacheDirectory;
+   }
+
+   public void setPreparedArchiveCacheDirectory(final String preparedArchiveCacheDirectory) {
+       this.preparedArchiveCacheDirectory = preparedArchiveCacheDirectory;
+   }
+
+   public int getPreparedArchiveCacheMaxSize() {
+       return this.preparedArchiveCacheMaxSize;
+   }
+
+   public void setPreparedArchiveCacheMaxSize(final int preparedArchiveCacheMaxSize) {
+       this.preparedArchiveCacheMaxSize = preparedArchiveCacheMaxSize;
+   }
+
+   public String getStagingDirectory() {
+       return this.stagingDirectory;
+   }
+
+   public void setStagingDirectory(final String stagingDirectory) {
+       this.stagingDirectory = stagingDirectory;
+   }
+
+   public String getServerStagingDirectory() {
+       return this.serverStagingDirectory;
+   }
+
+   public void setServerStagingDirectory(final String serverStagingDirectory) {
+       this.serverStagingDirectory = serverStagingDirectory;
+   }
+
+   public boolean isDirectWarDeploymentEnabled() {
+       return this.directWarDeploymentEnabled;
+   }
+
+   public void setDirectWarDeploymentEnabled(final boolean directWarDeploymentEnabled) {
+       this.directWarDeploymentEnabled = directWarDeploymentEnabled;
+   }
+
+   public boolean isExplodedDeploymentEnabled() {
+       return this.explodedDeploymentEnabled;
+   }
+
+   public void setExplodedDeploymentEnabled(final boolean explodedDeploymentEnabled) {
+       this.explodedDeploymentEnabled = explodedDeploymentEnabled;
+   }
+
+   public boolean isEagerConnectionEnabled() {
+       return this.eagerConnectionEnabled;
+   }
+
+   public void setEagerConnectionEnabled(final boolean eagerConnectionEnabled) {
+       this.eagerConnectionEnabled = eagerConnectionEnabled;
+   }
 }